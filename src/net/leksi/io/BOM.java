@@ -27,7 +27,7 @@ package net.leksi.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 /**
  *
@@ -35,150 +35,215 @@ import java.util.ArrayList;
  * returns the charset name. The {@code InputStream} after that has BOM 
  * skipped (except the case UTF-7, when the BOM should be decoded first). It is 
  * assumed that {@code InputStream} supports mark.
+ * <p>
+ * The BOMs are compiled to a table of primitive patterns compared with the 
+ * first bytes packed into a {@code long}, so a test allocates nothing. The 
+ * object has no state and may be shared by threads, e.g. {@link #INSTANCE}.
  * 
  * @author Alexey Zakharov &lt;leksi@leksi.net&gt;.
  */
 public class BOM {
     
+    /**
+     * The shared instance.
+     */
+    public static final BOM INSTANCE = new BOM();
+    
     private static final String[] ENCODINGS = new String[]{ 
         /* 0 */ null, /* 1 */ "UTF-32BE", /* 2 */ "UTF-16LE", 
         /* 3 */ "UTF-32LE", /* 4 */ "UTF-EBCDIC", /* 5 */ "GB18030", 
         /* 6 */ "UTF-8", /* 7 */ "SCSU", /* 8 */ "UTF-7", /* 9 */ "UTF-1", 
         /* 10 */ "BOCU-1", /* 11 */ "UTF-16BE"
     };
-    private static final int[][] SEQUENCES = new int[][]{ 
-        /* 0 */ new int[]{}, /* 1  */ new int[]{0, 0, 0xFE, 0xFF}, 
-        /* 2 */ new int[]{0xFF, 0xFE}, /* 3 */ new int[]{0, 0}, 
-        /* 4 */ new int[]{0xDD, 0x73, 0x66, 0x73}, 
-        /* 5 */ new int[]{0x84, 0x31, 0x95, 0x33}, 
-        /* 6 */ new int[]{0xEF, 0xBB, 0xBF}, /* 7 */ new int[]{0xE, 0xFE, 0xFF}, 
-        /* 8 */ new int[]{0x2B, 0x2F, 0x76}, /* 9 */ new int[]{0x38}, 
-        /* 10 */ new int[]{0x2D}, /* 11 */ new int[]{0x39}, 
-        /* 12 */ new int[]{0x2B}, /* 13 */ new int[]{0x2F}, 
-        /* 14 */ new int[]{0xF7, 0x64, 0x4C}, 
-        /* 15 */ new int[]{0xFB, 0xEE, 0x28}, /* 16 */ new int[]{0xFE, 0xFF}};
-    private static final int[] ENDS = new int[]{0, 1, 2, 3, 4, 5, 6, 7, -1, 8, 
-        8, 8, 8, 8, 9, 10, 11};
-    private static final int[][] FOLLOWS = new int[][]{ 
-        /* 0 */ new int[]{1, 2, 3, 4, 5, 6, 7, 8, 14, 15, 16}, 
-        /* 1 */ null, /* 2 */ new int[]{3}, /* 3 */ null, /* 4 */ null, 
-        /* 5 */ null, /* 6 */ null, /* 7 */ null, 
-        /* 8 */ new int[]{9, 11, 12, 13}, /* 9 */ new int[]{10}, 
-        /* 10 */ null, /* 11 */ null, /* 12 */ null, /* 13 */ null, 
-        /* 14 */ null, /* 15 */ null, /* 16 */ null};
-    private static final int READLIMIT = 6;
-    
-    private final ArrayList<Integer> stack = new ArrayList<>();
-    private final ArrayList<Boolean> sequenceTested = new ArrayList<>();
-    private final ArrayList<Integer> followsPosition = new ArrayList<>();
-    private final ArrayList<Integer> bufferOffset = new ArrayList<>();
+    /**
+     * The BOMs in the order of priority packed to the highest bytes of 
+     * {@code long}s.
+     */
+    private static final long[] PATTERNS = new long[]{
+        /* 0 */ 0x0000FEFF00000000L, /* 1 */ 0xFFFE000000000000L, 
+        /* 2 */ 0xFFFE000000000000L, /* 3 */ 0xDD73667300000000L, 
+        /* 4 */ 0x8431953300000000L, /* 5 */ 0xEFBBBF0000000000L, 
+        /* 6 */ 0x0EFEFF0000000000L, /* 7 */ 0x2B2F763800000000L, 
+        /* 8 */ 0x2B2F763900000000L, /* 9 */ 0x2B2F762B00000000L, 
+        /* 10 */ 0x2B2F762F00000000L, /* 11 */ 0xF7644C0000000000L, 
+        /* 12 */ 0xFBEE280000000000L, /* 13 */ 0xFEFF000000000000L
+    };
+    /**
+     * The lengths of the patterns.
+     */
+    private static final int[] LENGTHS = new int[]{4, 4, 2, 4, 4, 3, 3, 4, 4, 
+        4, 4, 3, 3, 2};
+    /**
+     * The indices of the patterns' encodings in {@code ENCODINGS}.
+     */
+    private static final int[] ENDS = new int[]{1, 3, 2, 4, 5, 6, 7, 8, 8, 8, 
+        8, 9, 10, 11};
+    static final int READLIMIT = 6;
     
-    private int numRead = 0;
-    private final byte[] buf = new byte[READLIMIT];
+    /**
+     * The class {@code Match} is a BOM found: the charset name and the number 
+     * of bytes to skip.
+     */
+    public static final class Match {
+        
+        private final String charsetName;
+        private final int length;
 
-    private void push(final int entry, final int offset) {
-        stack.add(entry);
-        sequenceTested.add(false);
-        followsPosition.add(0);
-        bufferOffset.add(offset);
-    }
+        private Match(final String charsetName, final int length) {
+            this.charsetName = charsetName;
+            this.length = length;
+        }
 
-    private int topNode() {
-        return stack.get(stack.size() - 1);
-    }
+        /**
+         * Returns the charset name.
+         * @return the charset name
+         */
+        public String getCharsetName() {
+            return charsetName;
+        }
 
-    private boolean topSequenceTested() {
-        return sequenceTested.get(stack.size() - 1);
+        /**
+         * Returns the number of bytes of the BOM to skip. It is 0 for UTF-7 
+         * as the BOM should be decoded.
+         * @return the number of bytes to skip
+         */
+        public int getLength() {
+            return length;
+        }
+        
     }
-
-    private void topSequenceTested(final boolean value) {
-        sequenceTested.set(stack.size() - 1, value);
+    
+    /**
+     * The matches of the patterns.
+     */
+    private static final Match[] MATCHES = new Match[PATTERNS.length];
+    
+    static {
+        for (int i = 0; i < PATTERNS.length; i++) {
+            String charsetName = ENCODINGS[ENDS[i]];
+            MATCHES[i] = new Match(charsetName, 
+                    "UTF-7".equals(charsetName) ? 0 : LENGTHS[i]);
+        }
     }
 
-    private int topFollowsPosition(final boolean postincrement) {
-        int res = followsPosition.get(stack.size() - 1);
-        if (postincrement) {
-            followsPosition.set(stack.size() - 1, res + 1);
+    /**
+     * Returns the index of the first pattern matching the bytes.
+     * 
+     * @param packed the first bytes packed to the highest bytes
+     * @param length the number of the bytes
+     * @return the index of the pattern or -1 if there is none
+     */
+    static int find(final long packed, final int length) {
+        for (int i = 0; i < PATTERNS.length; i++) {
+            if (LENGTHS[i] <= length && 
+                    (packed & -1L << 64 - 8 * LENGTHS[i]) == PATTERNS[i]) {
+                return i;
+            }
         }
-        return res;
+        return -1;
     }
 
-    private int topBufferRead() {
-        int offset = bufferOffset.get(stack.size() - 1);
-        int res = offset < numRead ? (int) (buf[offset++] & 0xFF) : -1;
-        bufferOffset.set(stack.size() - 1, offset);
-        return res;
+    /**
+     * Tests if more bytes may change the result for the bytes.
+     * 
+     * @param packed the first bytes packed to the highest bytes
+     * @param length the number of the bytes
+     * @return {@code true} if a longer pattern starts with the bytes
+     */
+    static boolean undecided(final long packed, final int length) {
+        long mask = length == 0 ? 0 : -1L << 64 - 8 * length;
+        for (int i = 0; i < PATTERNS.length; i++) {
+            if (LENGTHS[i] > length && (PATTERNS[i] & mask) == packed) {
+                return true;
+            }
+        }
+        return false;
     }
-
-    private int topBufferOffset() {
-        return bufferOffset.get(stack.size() - 1);
+    
+    /**
+     * Returns the match of the pattern.
+     * 
+     * @param found the index of the pattern or -1
+     * @return the match or {@code null} if {@code found} is -1
+     */
+    static Match match(final int found) {
+        return found < 0 ? null : MATCHES[found];
     }
-
-    private void pop() {
-        int position = stack.size() - 1;
-        sequenceTested.remove(position);
-        followsPosition.remove(position);
-        bufferOffset.remove(position);
-        stack.remove(position);
+    
+    /**
+     * Tests BOM (Byte Order Mark) at the start of the bytes.
+     * 
+     * @param data the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @return the match or {@code null} if there is no known BOM
+     */
+    public Match match(final byte[] data, final int off, final int len) {
+        long packed = 0;
+        int length = Math.min(len, READLIMIT);
+        for (int i = 0; i < length; i++) {
+            packed |= (long)(data[off + i] & 0xFF) << 56 - 8 * i;
+        }
+        return match(find(packed, length));
+    }
+    
+    /**
+     * Tests BOM (Byte Order Mark) at the start of the bytes.
+     * 
+     * @param data the bytes
+     * @return the match or {@code null} if there is no known BOM
+     */
+    public Match match(final byte[] data) {
+        return match(data, 0, data.length);
+    }
+    
+    /**
+     * Tests BOM (Byte Order Mark) at the position of the buffer. The 
+     * buffer's position is not changed.
+     * 
+     * @param buffer the buffer
+     * @return the match or {@code null} if there is no known BOM
+     */
+    public Match match(final ByteBuffer buffer) {
+        long packed = 0;
+        int length = Math.min(buffer.remaining(), READLIMIT);
+        for (int i = 0; i < length; i++) {
+            packed |= (long)(buffer.get(buffer.position() + i) & 0xFF) << 
+                    56 - 8 * i;
+        }
+        return match(find(packed, length));
     }
 
     /**
      * Tests BOM (Byte Order Mark) of data from {@code InputStream} and 
      * returns the charset name. The {@code InputStream} after that has BOM 
      * skipped (except the case UTF-7, when the BOM should be decoded first).
+     * <p>
+     * The {@code InputStream} must support mark, otherwise use 
+     * {@link BOMInputStream}.
      * 
      * @param input {@code InputStream} to test
      * @return the charset name or null if there is no known BOM
      * @throws IOException re-throws stream's IOException
      */
     public String test(final InputStream input) throws IOException {
-        String res = null;
-        int resultingOffset = 0;
+        long packed = 0;
+        int length = 0;
         input.mark(READLIMIT);
-        numRead = input.read(buf);
-        push(0, 0);
-        while (true) {
-            boolean success = true;
-            int top = topNode();
-            if (!topSequenceTested()) {
-                int[] sequence = SEQUENCES[top];
-                for (int i = 0; i < sequence.length; i++) {
-                    int b = topBufferRead();
-                    if (b < 0) {
-                        success = false;
-                        break;
-                    }
-                    if (((int) sequence[i] & 0xFF) != b) {
-                        success = false;
-                        break;
-                    }
-                }
-                topSequenceTested(true);
-            }
-            if (success) {
-                int[] follows = FOLLOWS[top];
-                if (follows != null && topFollowsPosition(false) < follows.length) {
-                    push(follows[topFollowsPosition(true)], topBufferOffset());
-                } else {
-                    if (ENDS[top] != -1) {
-                        res = ENCODINGS[ENDS[top]];
-                        if (!"UTF-7".equals(res)) {
-                            resultingOffset = topBufferOffset();
-                        }
-                        break;
-                    }
-                    success = false;
-                }
-            }
-            if (!success) {
-                pop();
-            }
+        int b;
+        while (length < READLIMIT && (b = input.read()) >= 0) {
+            packed |= (long)b << 56 - 8 * length;
+            length++;
         }
         input.reset();
-        if (resultingOffset > 0) {
-            input.skip(resultingOffset);
+        Match match = match(find(packed, length));
+        if (match == null) {
+            return null;
+        }
+        if (match.getLength() > 0) {
+            input.skip(match.getLength());
         }
-        return res;
+        return match.getCharsetName();
     }
     
 }
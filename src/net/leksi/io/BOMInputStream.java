@@ -0,0 +1,193 @@
+/*
+ * net.leksi.io.BOMInputStream
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The class {@code BOMInputStream} tests BOM (Byte Order Mark) of the 
+ * underlying {@code InputStream} which need not support mark. The bytes read 
+ * ahead to test are kept and given back first, so the stream reads the data 
+ * with the BOM skipped (except the case UTF-7, when the BOM should be decoded 
+ * first) without an extra buffering layer.
+ * <p>
+ * If there is no BOM, the charset may be guessed by a sample of the first 
+ * bytes with {@link CharsetDetector}.
+ * 
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class BOMInputStream extends InputStream {
+
+    /**
+     * The underlying {@code InputSource} object.
+     */
+    private final InputStream source;
+    /**
+     * The bytes read ahead.
+     */
+    private final byte[] head;
+    /**
+     * The position of the next byte to give back from the {@code head}.
+     */
+    private int headPosition = 0;
+    /**
+     * The number of the bytes read ahead.
+     */
+    private int headLength = 0;
+    /**
+     * The BOM found or {@code null}.
+     */
+    private final BOM.Match match;
+    /**
+     * The guess if there is no BOM or {@code null}.
+     */
+    private final CharsetDetector.Detection detection;
+
+    /**
+     * Creates {@code BOMInputStream} object over the given 
+     * {@code InputStream} reading ahead as many bytes as needed to test BOM.
+     * @param source the given {@code InputStream}.
+     * @throws IOException re-throws stream's IOException
+     */
+    public BOMInputStream(final InputStream source) throws IOException {
+        this(source, 0);
+    }
+
+    /**
+     * Creates {@code BOMInputStream} object over the given 
+     * {@code InputStream} reading ahead as many bytes as needed to test BOM. 
+     * If there is no BOM, up to {@code sampleSize} bytes are read ahead to 
+     * guess the charset.
+     * @param source the given {@code InputStream}.
+     * @param sampleSize the number of the bytes to guess the charset by or 0 
+     *                   not to guess
+     * @throws IOException re-throws stream's IOException
+     */
+    public BOMInputStream(final InputStream source, final int sampleSize) 
+            throws IOException {
+        this.source = source;
+        head = new byte[Math.max(sampleSize, BOM.READLIMIT)];
+        long packed = 0;
+        while (headLength < BOM.READLIMIT && 
+                BOM.undecided(packed, headLength)) {
+            int n = source.read(head, headLength, 
+                    BOM.READLIMIT - headLength);
+            if (n < 0) {
+                break;
+            }
+            for (int i = headLength; i < headLength + n; i++) {
+                packed |= (long)(head[i] & 0xFF) << 56 - 8 * i;
+            }
+            headLength += n;
+        }
+        match = BOM.match(BOM.find(packed, headLength));
+        if (match != null) {
+            headPosition = match.getLength();
+            detection = null;
+        } else if (sampleSize > 0) {
+            int n = 0;
+            while (headLength < sampleSize && n >= 0) {
+                n = source.read(head, headLength, sampleSize - headLength);
+                headLength += Math.max(n, 0);
+            }
+            detection = CharsetDetector.INSTANCE.detect(head, 0, headLength);
+        } else {
+            detection = null;
+        }
+    }
+
+    /**
+     * Returns the BOM found.
+     * @return the BOM found or {@code null} if there is no known BOM
+     */
+    public BOM.Match getMatch() {
+        return match;
+    }
+
+    /**
+     * Returns the guess of the charset if there is no BOM.
+     * @return the guess or {@code null} if there is a BOM or the charset is 
+     *         not guessed
+     */
+    public CharsetDetector.Detection getDetection() {
+        return detection;
+    }
+
+    /**
+     * Returns the charset name of the BOM found.
+     * @return the charset name or {@code null} if there is no known BOM
+     */
+    public String getCharsetName() {
+        return match == null ? null : match.getCharsetName();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (headPosition < headLength) {
+            return head[headPosition++] & 0xFF;
+        }
+        return source.read();
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) 
+            throws IOException {
+        if (headPosition < headLength) {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            int n = Math.min(len, headLength - headPosition);
+            System.arraycopy(head, headPosition, b, off, n);
+            headPosition += n;
+            return n;
+        }
+        return source.read(b, off, len);
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (headPosition < headLength && n > 0) {
+            int skipped = (int)Math.min(n, headLength - headPosition);
+            headPosition += skipped;
+            return skipped;
+        }
+        return source.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return headLength - headPosition + source.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+        super.close();
+    }
+    
+}
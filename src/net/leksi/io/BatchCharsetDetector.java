@@ -0,0 +1,385 @@
+/*
+ * net.leksi.io.BatchCharsetDetector
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The class {@code BatchCharsetDetector} detects the charsets of many files 
+ * in parallel on a bounded number of threads. Only the first bytes of a file 
+ * are read with a positional read of its {@code FileChannel}, the BOM is 
+ * tested with {@link BOM} and the charset is guessed with 
+ * {@link CharsetDetector} if there is no BOM.
+ * <p>
+ * The results are cached by the path, the size and the last modified time of 
+ * a file, so an unchanged file is not opened again. The cache may be kept in 
+ * a file between the runs. The cache is advisory: the lines of the file 
+ * which cannot be parsed are skipped.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class BatchCharsetDetector implements Closeable {
+    
+    /**
+     * The class {@code Result} is the charset of a file.
+     */
+    public static final class Result {
+        
+        private final String charsetName;
+        private final int bomLength;
+        private final int confidence;
+
+        private Result(final String charsetName, final int bomLength, 
+                final int confidence) {
+            this.charsetName = charsetName;
+            this.bomLength = bomLength;
+            this.confidence = confidence;
+        }
+
+        /**
+         * Returns the charset name.
+         * @return the charset name or {@code null} if the file is empty
+         */
+        public String getCharsetName() {
+            return charsetName;
+        }
+
+        /**
+         * Returns the number of bytes of the BOM to skip.
+         * @return the number of bytes to skip, 0 if there is no BOM
+         * @see BOM.Match#getLength() 
+         */
+        public int getBomLength() {
+            return bomLength;
+        }
+
+        /**
+         * Returns the confidence from 0 to 100. It is 100 if there is a BOM.
+         * @return the confidence
+         */
+        public int getConfidence() {
+            return confidence;
+        }
+        
+    }
+    
+    /**
+     * The class {@code Entry} is a cached result with the file's metadata.
+     */
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final Result result;
+
+        private Entry(final long size, final long modified, 
+                final Result result) {
+            this.size = size;
+            this.modified = modified;
+            this.result = result;
+        }
+    }
+    
+    /**
+     * The executor of the detection.
+     */
+    private final ExecutorService executor;
+    /**
+     * The file to keep the cache in or {@code null}.
+     */
+    private final Path cacheFile;
+    /**
+     * The cached results.
+     */
+    private final Map<Path, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates {@code BatchCharsetDetector} object not keeping the cache.
+     * @param parallelism the number of the threads
+     */
+    public BatchCharsetDetector(final int parallelism) {
+        executor = Executors.newFixedThreadPool(parallelism);
+        cacheFile = null;
+    }
+    
+    /**
+     * Creates {@code BatchCharsetDetector} object keeping the cache in the 
+     * file. The cache is loaded if the file exists and is saved with 
+     * {@link #save()} and {@link #close()}.
+     * @param parallelism the number of the threads
+     * @param cacheFile the file to keep the cache in
+     * @throws IOException if the cache cannot be loaded
+     */
+    public BatchCharsetDetector(final int parallelism, final Path cacheFile) 
+            throws IOException {
+        this.cacheFile = cacheFile;
+        if(Files.exists(cacheFile)) {
+            load();
+        }
+        executor = Executors.newFixedThreadPool(parallelism);
+    }
+    
+    /**
+     * Detects the charsets of the files.
+     * @param paths the files
+     * @return the results in the order of the paths
+     * @throws IOException if a file cannot be read
+     */
+    public Map<Path, Result> detect(final Collection<Path> paths) 
+            throws IOException {
+        List<Future<Result>> futures = new ArrayList<>(paths.size());
+        for(Path path: paths) {
+            futures.add(executor.submit(() -> detect(path)));
+        }
+        Map<Path, Result> res = new LinkedHashMap<>();
+        int i = 0;
+        for(Path path: paths) {
+            try {
+                res.put(path, futures.get(i++).get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Cannot detect charset of " + path, ex);
+            } catch (ExecutionException ex) {
+                throw new IOException("Cannot detect charset of " + path, 
+                        ex.getCause());
+            }
+        }
+        return res;
+    }
+    
+    /**
+     * Detects the charset of the file using the cache. The file is cached by 
+     * its absolute normalized path.
+     * @param path the file
+     * @return the result
+     * @throws IOException if the file cannot be read
+     */
+    public Result detect(final Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, 
+                BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Path key = path.toAbsolutePath().normalize();
+        Entry entry = cache.get(key);
+        if(entry != null && entry.size == size && entry.modified == modified) {
+            return entry.result;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(size, 
+                CharsetDetector.DEFAULT_SAMPLE_SIZE));
+        try(FileChannel channel = FileChannel.open(path, 
+                StandardOpenOption.READ)) {
+            while(buffer.hasRemaining() && 
+                    channel.read(buffer, buffer.position()) >= 0) {
+            }
+        }
+        buffer.flip();
+        Result result;
+        BOM.Match match = BOM.INSTANCE.match(buffer);
+        if(match != null) {
+            result = new Result(match.getCharsetName(), match.getLength(), 100);
+        } else {
+            CharsetDetector.Detection detection = 
+                    CharsetDetector.INSTANCE.detect(buffer);
+            result = detection == null ? new Result(null, 0, 0) : 
+                    new Result(detection.getCharsetName(), 0, 
+                            detection.getConfidence());
+        }
+        cache.put(key, new Entry(size, modified, result));
+        return result;
+    }
+    
+    /**
+     * Saves the cache to the file given at creation if there is one. The file 
+     * is replaced atomically if the file system supports it.
+     * @throws IOException if the cache cannot be saved
+     */
+    public void save() throws IOException {
+        if(cacheFile == null) {
+            return;
+        }
+        Path tmp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), 
+                cacheFile.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            try(BufferedWriter writer = Files.newBufferedWriter(tmp, 
+                    StandardCharsets.UTF_8)) {
+                for(Map.Entry<Path, Entry> item: cache.entrySet()) {
+                    Entry entry = item.getValue();
+                    writer.write(entry.size + "\t" + entry.modified + "\t" + 
+                            (entry.result.charsetName == null ? "-" : 
+                            entry.result.charsetName) + "\t" + 
+                            entry.result.bomLength + "\t" + 
+                            entry.result.confidence + "\t" + 
+                            escape(item.getKey().toString()));
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, 
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if(!moved) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+    
+    /**
+     * Loads the cache from the file given at creation skipping the lines 
+     * which cannot be parsed. The malformed bytes are replaced.
+     */
+    private void load() throws IOException {
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(cacheFile), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 6);
+                if(fields.length != 6) {
+                    continue;
+                }
+                String path = unescape(fields[5]);
+                try {
+                    if(path != null) {
+                        cache.put(Paths.get(path).toAbsolutePath()
+                                .normalize(), new Entry(
+                                Long.parseLong(fields[0]), 
+                                Long.parseLong(fields[1]), 
+                                new Result("-".equals(fields[2]) ? null : 
+                                        fields[2], Integer.parseInt(fields[3]), 
+                                        Integer.parseInt(fields[4]))));
+                    }
+                } catch(NumberFormatException | InvalidPathException ex) {
+                }
+            }
+        }
+    }
+    
+    /**
+     * Escapes the backslash, the tab and the line breaks of the path to keep 
+     * it in one field of a line.
+     */
+    private static String escape(final String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for(int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            switch(c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Restores the path escaped with {@link #escape(String)}.
+     * @return the path or {@code null} if the escaping is broken
+     */
+    private static String unescape(final String field) {
+        StringBuilder sb = new StringBuilder(field.length());
+        for(int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if(c == '\t') {
+                return null;
+            }
+            if(c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if(++i == field.length()) {
+                return null;
+            }
+            switch(field.charAt(i)) {
+                case '\\':
+                    sb.append('\\');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Saves the cache and stops the threads.
+     * @throws IOException if the cache cannot be saved
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        save();
+    }
+    
+}
@@ -35,10 +35,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The class {@code BranchInputStream} is for different consumers to 
  * independently read the same {@code InputStream}.
+ * <p>
+ * The branches of one tree may be read by different threads, also virtual 
+ * ones: the chunks are filled under the tree's lock and published filled, 
+ * so the data already read is taken without the lock. A branch itself is 
+ * read by one thread at a time.
  *
  * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
  * @since JDK1.8
@@ -119,17 +125,18 @@ abstract public class BranchInputStream extends InputStream {
      */
     private static class Chunk {
         /**
-         * The actual chunk length.
+         * The actual chunk length. It is published to other branches with 
+         * volatile semantics after the bytes are written.
          */
-        private int length = 0;
+        private volatile int length = 0;
         /**
          * The {@code char} array to contain the data chunk.
          */
         private byte buffer[] = null;
         /**
-         * The pointer to the next chunk.
+         * The pointer to the next chunk, published filled.
          */
-        private Chunk next = null;
+        private volatile Chunk next = null;
         /**
          * An offset of the chunk's starting position from the whole data's one.
          */
@@ -152,6 +159,13 @@ abstract public class BranchInputStream extends InputStream {
     private static class Root {
         
         private int chunkSize = DEFAULT_CHUNK_SIZE;
+        
+        /**
+         * The lock guarding the tree's shared state. It is not a monitor in 
+         * order not to pin a virtual thread to its carrier while the 
+         * underlying {@code InputStream} is being read.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
     
         /**
          * The underlying {@code InputStream}.
@@ -168,9 +182,10 @@ abstract public class BranchInputStream extends InputStream {
         private final HashMap<Long, Branch> branches = new HashMap<>();
         /**
          * The last chunk at the singly linked list of data pieces read from the 
-         * underlying {@code InputStream}.
+         * underlying {@code InputStream}. Branches read it without the lock, 
+         * so it is volatile.
          */
-        private Chunk endChunk = new Chunk(0);
+        private volatile Chunk endChunk = new Chunk(0);
         /**
          * Generates ids for branches 
          */
@@ -217,7 +232,8 @@ abstract public class BranchInputStream extends InputStream {
 
             @Override
             public BranchInputStream[] branch(final int count) throws IOException {
-                synchronized(Root.this) {
+                Root.this.lock.lock();
+                try {
                     BranchInputStream[] res;
 
                     if (isClosed()) {
@@ -229,6 +245,8 @@ abstract public class BranchInputStream extends InputStream {
                         branches.put(((Branch) res[i]).id, (Branch) res[i]);
                     }
                     return res;
+                } finally {
+                    Root.this.lock.unlock();
                 }
             }
 
@@ -239,13 +257,16 @@ abstract public class BranchInputStream extends InputStream {
 
             @Override
             public void close() throws IOException {
-                synchronized (Root.this) {
+                Root.this.lock.lock();
+                try {
                     isClosed.set(true);
                     branches.remove(id);
                     if (branches.isEmpty() && source != null) {
                         source.close();
                         source = null;
                     }
+                } finally {
+                    Root.this.lock.unlock();
                 }
             }
 
@@ -255,8 +276,10 @@ abstract public class BranchInputStream extends InputStream {
                 
                 if(!isClosed.get()) {
                     boolean canRead = true;
-                    if (position + 1 > endChunk.offset + endChunk.length) {
-                        synchronized(Root.this) {
+                    Chunk end = endChunk;
+                    if (position + 1 > end.offset + end.length) {
+                        Root.this.lock.lock();
+                        try {
                             long dataLength = endChunk.offset + endChunk.length;
                             if (position + 1 > dataLength && !isSourceEnded) {
                                 /*
@@ -265,29 +288,41 @@ abstract public class BranchInputStream extends InputStream {
                                  */
                                 int leftReadCount = (int) (chunkSize);
                                 /*
-                                 * Allocate new chunk and add it to list
+                                 * Allocate new chunk, fill it and add it to 
+                                 * list, so the branches reading without the 
+                                 * lock never see it partly linked
                                  */
-                                endChunk.next = new Chunk(chunkSize);
-                                endChunk.next.offset = dataLength;
-                                endChunk = endChunk.next;
-
-                                while (leftReadCount > 0) {
-                                    int n = source.read(endChunk.buffer, 0, 
-                                            leftReadCount);
-                                    if (n <= 0) {
-                                        isSourceEnded = true;
-                                        break;
+                                Chunk newChunk = new Chunk(chunkSize);
+                                newChunk.offset = dataLength;
+                                try {
+                                    while (leftReadCount > 0) {
+                                        int n = source.read(newChunk.buffer, 
+                                                newChunk.length, leftReadCount);
+                                        if (n <= 0) {
+                                            isSourceEnded = true;
+                                            break;
+                                        }
+                                        newChunk.length += n;
+                                        leftReadCount -= n;
+                                    }
+                                } finally {
+                                    if (newChunk.length > 0) {
+                                        endChunk.next = newChunk;
+                                        endChunk = newChunk;
                                     }
-                                    endChunk.length += n;
-                                    leftReadCount -= n;
                                 }
                             }
+                        } finally {
+                            Root.this.lock.unlock();
                         }
                     }
                     
                     if (position >= chunk.offset + chunk.length) {
                         canRead = false;
                         if(chunk.next != null) {
+                            /*
+                             * a chunk is linked only if it is not empty
+                             */
                             canRead = true;
                             chunk = chunk.next;
                         }
@@ -302,17 +337,21 @@ abstract public class BranchInputStream extends InputStream {
 
             @Override
             public BranchInputStream[] getBranches() {
-                synchronized (Root.this) {
+                Root.this.lock.lock();
+                try {
                     if(branches.isEmpty()) {
                         return new BranchInputStream[]{};
                     }
                     return branches.values().stream().toArray(BranchInputStream[]::new);
+                } finally {
+                    Root.this.lock.unlock();
                 }
             }
 
             @Override
             public boolean closeOthers() throws IOException {
-                synchronized(Root.this) {
+                Root.this.lock.lock();
+                try {
                     if(isClosed()) {
                         return false;
                     }
@@ -325,6 +364,8 @@ abstract public class BranchInputStream extends InputStream {
                     for(Branch branch: toClose) {
                         branch.close();
                     }
+                } finally {
+                    Root.this.lock.unlock();
                 }
                 return true;
             }
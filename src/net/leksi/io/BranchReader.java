@@ -29,17 +29,33 @@
  */
 package net.leksi.io;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The class {@code BranchReader} is for different consumers to 
@@ -52,16 +68,56 @@ abstract public class BranchReader extends Reader {
     
     static final private int DEFAULT_CHUNK_SIZE = 0x1000;
     
+    static final private int DEFAULT_TOKEN_CACHE_SIZE = 0x1000;
+    
+    static final private int DEFAULT_MEMO_CAPACITY = 0x10000;
+    
+    /**
+     * Returns an array of {@code count} new branches {@code BranchReader}
+     * which can be read from the current position of the parent's 
+     * {@code BranchReader}.
+     * 
+     * @param count a number of new branches
+     * @return an array of new branches
+     * @throws IOException if it is closed
+     */
+    public BranchReader[] branch(final int count) throws IOException {
+        return branch(count, false);
+    }
+    
     /**
      * Returns an array of {@code count} new branches {@code BranchReader}
      * which can be read from the current position of the parent's 
      * {@code BranchReader}.
+     * <p>
+     * A thread-confined branch does not synchronize its own reading, 
+     * pushing back and line tracking, so it must be used by one thread at a 
+     * time. The structures shared with other branches (chunks, the branches 
+     * list) stay thread-safe, so other branches of the same tree may still be 
+     * read in other threads.
+     * <p>
+     * The new branches are cheap handles sharing the parent's state at the 
+     * moment of branching. A branch becomes independent on its first use, so 
+     * the branches closed unused cost neither a copy of the state nor an 
+     * entry in the branches list.
      * 
      * @param count a number of new branches
+     * @param threadConfined the flag signaling whether the new branches are 
+     *                       used by one thread only
      * @return an array of new branches
      * @throws IOException if it is closed
      */
-    abstract public BranchReader[] branch(final int count) throws IOException;
+    abstract public BranchReader[] branch(final int count, 
+            final boolean threadConfined) throws IOException;
+    
+    /**
+     * Returns a boolean value meaning if the {@code BranchReader} is 
+     * thread-confined.
+     * 
+     * @return a boolean value meaning if the {@code BranchReader} is 
+     *         thread-confined
+     */
+    abstract public boolean isThreadConfined();
     
     /**
      * Returns a boolean value meaning if the 
@@ -78,6 +134,15 @@ abstract public class BranchReader extends Reader {
      */
     abstract public BranchReader[] getBranches();
     
+    /**
+     * Returns the number of branches of the tree which became unreachable 
+     * without being closed and were removed from the tree. Such branches are 
+     * removed when the branches of the tree are created or closed, so the 
+     * data they have not read yet is not retained.
+     * @return the number of abandoned branches removed
+     */
+    abstract public long getAbandonedCount();
+    
     /**
      * Closes all branches except this
      * @return boolean indicating the opertion was successful
@@ -106,6 +171,39 @@ abstract public class BranchReader extends Reader {
      */
     abstract public int getCharPositionInLine();
     
+    /**
+     * Returns the next character without consuming it. Neither the position 
+     * nor the line and column are changed.
+     * @return the next character or -1 if the end of the data has been 
+     *         reached or the {@code BranchReader} is closed
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public int peek() throws IOException;
+    
+    /**
+     * Returns up to {@code n} next characters without consuming them. Neither 
+     * the position nor the line and column are changed. The returned 
+     * {@code CharSequence} is a view over the data already read from the 
+     * underlying {@code Reader}, so no characters are copied unless there are 
+     * pushed back ones.
+     * @param n the number of characters to look ahead
+     * @return the next characters, shorter than {@code n} if the end of the 
+     *         data is reached, or empty if the {@code BranchReader} is closed
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public CharSequence peek(final int n) throws IOException;
+    
+    /**
+     * Returns the character at {@code offset} from the current position 
+     * without consuming anything. Neither the position nor the line and 
+     * column are changed.
+     * @param offset the offset of the character, 0 is the next one to read
+     * @return the character or -1 if the end of the data is reached before 
+     *         it or the {@code BranchReader} is closed
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public int lookAhead(final int offset) throws IOException;
+    
     /**
      * Pushes back an array of characters by copying it to the front of the 
      * pushback buffer.
@@ -141,6 +239,245 @@ abstract public class BranchReader extends Reader {
      */
     abstract public void unread(final int c) throws IOException;
     
+    /**
+     * Skips characters while they satisfy the {@code predicate}. The chunks 
+     * are scanned in place and the line and column are updated once per run 
+     * of characters.
+     * @param predicate the predicate the skipped characters satisfy
+     * @return the number of characters skipped
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public long skipWhile(final CharPredicate predicate) 
+            throws IOException;
+    
+    /**
+     * Reads characters while they satisfy the {@code predicate} and appends 
+     * them to {@code out}. The chunks are scanned in place and the line and 
+     * column are updated once per run of characters.
+     * @param predicate the predicate the read characters satisfy
+     * @param out the {@code Appendable} to append the read characters to
+     * @return the number of characters read
+     * @throws java.io.IOException underlying IOException or the one thrown 
+     *                             by {@code out}
+     */
+    abstract public long readWhile(final CharPredicate predicate, 
+            final Appendable out) throws IOException;
+    
+    /**
+     * Reads characters up to the {@code delimiter}. The {@code delimiter} is 
+     * consumed but not included into the result.
+     * @param delimiter the character to read up to
+     * @return the characters before the {@code delimiter} or before the end 
+     *         of the data if there is no {@code delimiter}, or {@code null} if 
+     *         the end of the data has been reached
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public String readUntil(final char delimiter) throws IOException;
+    
+    /**
+     * Reads characters up to the {@code delimiter}. The {@code delimiter} is 
+     * consumed but not included into the result.
+     * @param delimiter the non-empty string to read up to
+     * @return the characters before the {@code delimiter} or before the end 
+     *         of the data if there is no {@code delimiter}, or {@code null} if 
+     *         the end of the data has been reached
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public String readUntil(final String delimiter) throws IOException;
+    
+    /**
+     * Reads a line of text. A line is considered to be terminated by any one 
+     * of a line feed ('\n'), a carriage return ('\r'), or a carriage return 
+     * followed immediately by a linefeed.
+     * @return the line not including any line-termination characters, or 
+     *         {@code null} if the end of the data has been reached
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public String readLine() throws IOException;
+    
+    /**
+     * Returns a {@code Stream} of the lines read lazily from this 
+     * {@code BranchReader} as by {@link #readLine()}. An {@code IOException} 
+     * thrown while reading is wrapped in an {@code UncheckedIOException}.
+     * @return the {@code Stream} of the lines
+     */
+    public Stream<String> lines() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<String>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(final Consumer<? super String> action) {
+                try {
+                    String line = readLine();
+                    if(line == null) {
+                        return false;
+                    }
+                    action.accept(line);
+                    return true;
+                } catch(IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }, false);
+    }
+    
+    /**
+     * Returns a parallel {@code Stream} of the rest of the lines. The rest of 
+     * the data is read from the underlying {@code Reader} and the 
+     * {@code Spliterator} splits it at the line breaks in place, so the lines 
+     * are taken from the chunks in parallel. This {@code BranchReader} does 
+     * not move.
+     * <p>
+     * Note that the whole rest of the data is held in memory as chars until 
+     * the stream is consumed, so the input must fit in the heap. A larger 
+     * input is to be streamed with {@link #lines()} or in pieces of trimmed 
+     * branches.
+     * @return the parallel {@code Stream} of the lines
+     * @throws java.io.IOException underlying IOException or if it is closed
+     * @see #readLine() 
+     */
+    abstract public Stream<String> linesParallel() throws IOException;
+    
+    /**
+     * Reads a decimal {@code int} value: an optional sign followed by digits. 
+     * The value is parsed directly from the chunks without allocation. If 
+     * there is no number at the current position or it is out of range, 
+     * nothing is consumed.
+     * @return the read value
+     * @throws NumberFormatException if there is no valid {@code int} value at 
+     *                               the current position
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public int readInt() throws IOException;
+    
+    /**
+     * Reads a decimal {@code long} value: an optional sign followed by digits. 
+     * The value is parsed directly from the chunks without allocation. If 
+     * there is no number at the current position or it is out of range, 
+     * nothing is consumed.
+     * @return the read value
+     * @throws NumberFormatException if there is no valid {@code long} value 
+     *                               at the current position
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public long readLong() throws IOException;
+    
+    /**
+     * Reads a decimal {@code double} value: an optional sign, digits with an 
+     * optional fraction and an optional exponent. The value is parsed 
+     * directly from the chunks; it allocates only for values which cannot be 
+     * converted exactly by the fast path, i.e. having more than 15 
+     * significant digits or a large exponent. If there is no number at the 
+     * current position, nothing is consumed.
+     * @return the read value
+     * @throws NumberFormatException if there is no valid {@code double} value 
+     *                               at the current position
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public double readDouble() throws IOException;
+    
+    /**
+     * Reads {@code length} characters as a {@code String} taken from the 
+     * token cache shared by all branches of the tree. A {@code String} is 
+     * allocated only if there is no equal one in the cache, so the repeating 
+     * identifiers and keywords are the same instances.
+     * @param length the number of characters to read
+     * @return the read characters, shorter than {@code length} if the end of 
+     *         the data is reached, or {@code null} if the end of the data has 
+     *         been reached
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public String readToken(final int length) throws IOException;
+    
+    /**
+     * Reads characters while they satisfy the {@code predicate} as a 
+     * {@code String} taken from the token cache shared by all branches of the 
+     * tree. A {@code String} is allocated only if there is no equal one in the 
+     * cache, so the repeating identifiers and keywords are the same instances.
+     * @param predicate the predicate the read characters satisfy
+     * @return the read characters, empty if the next one does not satisfy the 
+     *         {@code predicate} or there is no more data
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public String readWhileInterned(final CharPredicate predicate) 
+            throws IOException;
+    
+    /**
+     * Returns the position of the next character to read counted from the 
+     * start of the data. The characters unread are not counted, so the 
+     * position goes back by their number.
+     * @return the current position
+     */
+    abstract public long getPosition();
+    
+    /**
+     * Looks up the result of the rule applied at the current position by any 
+     * branch of the tree. If there is one, the {@code BranchReader} moves to 
+     * its end position. 
+     * <p>
+     * The memo is not looked up while there are unread characters.
+     * @param ruleId the id of the rule
+     * @return the memoized result or {@code null} if there is none
+     * @throws java.io.IOException underlying IOException
+     */
+    abstract public Memo recall(final int ruleId) throws IOException;
+    
+    /**
+     * Memoizes the result of the rule applied at the {@code start} position 
+     * and ended at the current position for all branches of the tree. The 
+     * entries of the positions no open branch can reach again are evicted 
+     * when the memo is full.
+     * <p>
+     * Nothing is memoized while there are unread characters.
+     * @param ruleId the id of the rule
+     * @param start the position the rule was applied at
+     * @param result the result of the rule
+     * @return the memoized result or {@code null} if it is not memoized
+     * @throws IllegalArgumentException if {@code start} is negative or 
+     *         beyond the current position
+     */
+    abstract public Memo memoize(final int ruleId, final long start, 
+            final Object result);
+    
+    /**
+     * Returns a checkpoint of the current state to return to with 
+     * {@link #restore(Checkpoint)}. Unlike a branch, it is not registered in 
+     * the tree and can not be read, so it is much cheaper to take for 
+     * sequential backtracking. The data after the checkpoint is kept until it 
+     * is released with {@link #release(Checkpoint)}.
+     * @return the checkpoint
+     * @throws java.io.IOException if it is closed
+     */
+    abstract public Checkpoint checkpoint() throws IOException;
+    
+    /**
+     * Returns the {@code BranchReader} to the state of the checkpoint. The 
+     * checkpoint stays valid and may be restored again.
+     * @param checkpoint the checkpoint taken from this {@code BranchReader}
+     * @throws java.io.IOException if it is closed or the checkpoint is 
+     *         released or taken from another {@code BranchReader}
+     */
+    abstract public void restore(final Checkpoint checkpoint) 
+            throws IOException;
+    
+    /**
+     * Releases the checkpoint, so it can not be restored any more.
+     * @param checkpoint the checkpoint taken from this {@code BranchReader}
+     * @throws java.io.IOException if the checkpoint is taken from another 
+     *         {@code BranchReader}
+     */
+    abstract public void release(final Checkpoint checkpoint) 
+            throws IOException;
+    
+    /**
+     * Returns a new {@link CursorTable} with the cursor 0 at the current 
+     * state. The cursors and the branches exposed from them keep the end 
+     * of this {@code BranchReader} if it was trimmed. The table keeps the 
+     * tree open until it is closed but is not listed among the branches.
+     * @return the cursor table
+     * @throws java.io.IOException if it is closed
+     */
+    abstract public CursorTable cursorTable() throws IOException;
+    
     /**
      * Trims <b>this</b> reader's avalable data to the current position of 
      * <b>other</b> reader.
@@ -151,6 +488,46 @@ abstract public class BranchReader extends Reader {
      */
     abstract public void trim(final BranchReader other) throws IOException;
     
+    /**
+     * Splits the rest of the data into at most {@code count} consecutive 
+     * regions of about equal length, each ending just after a delimiter, and 
+     * returns the branches bounded by the regions. Every branch starts with 
+     * the correct line and column, so the regions can be parsed in parallel, 
+     * e.g. in a {@code ForkJoinPool}. The last region ends where this 
+     * {@code BranchReader} does.
+     * <p>
+     * The rest of the data is read from the underlying {@code Reader} to know 
+     * its length. This {@code BranchReader} does not move.
+     * <p>
+     * Note that the whole rest of the data is held in memory as chars while 
+     * this {@code BranchReader} or a region branch is open, so the input must 
+     * fit in the heap. Larger inputs are to be read and split in pieces, e.g. 
+     * of a trimmed branch.
+     * @param count the maximal number of regions
+     * @param delimiter the predicate of a character a region may end with
+     * @return the branches bounded by the regions, fewer than {@code count} 
+     *         if there are not enough delimiters
+     * @throws java.io.IOException underlying IOException or if it is closed
+     * @throws IllegalArgumentException if {@code count} is not positive
+     */
+    abstract public BranchReader[] split(final int count, 
+            final CharPredicate delimiter) throws IOException;
+    
+    /**
+     * Splits the rest of the data into at most {@code count} consecutive 
+     * regions of whole lines and returns the branches bounded by the regions. 
+     * The line breaks "\n", "\r" and "\r\n" are recognized. The whole rest 
+     * of the data is held in memory like by 
+     * {@link #split(int, CharPredicate)}.
+     * @param count the maximal number of regions
+     * @return the branches bounded by the regions
+     * @throws java.io.IOException underlying IOException or if it is closed
+     * @throws IllegalArgumentException if {@code count} is not positive
+     * @see #split(int, CharPredicate) 
+     */
+    abstract public BranchReader[] splitLines(final int count) 
+            throws IOException;
+    
     /**
      * A factory method for creation of an {@code BranchReader} object of 
      * the concrete implementation based on the openned underlying
@@ -180,16 +557,55 @@ abstract public class BranchReader extends Reader {
         return new Root(source, chunkSize).root();
     }
     
+    /**
+     * A factory method for creation of an {@code BranchReader} object of 
+     * the concrete implementation based on the openned underlying
+     * {@code Reader}. The  reading is possible from the current position of the 
+     * {@code source}.
+     * 
+     * @param source the preliminary openned {@code Reader}
+     * @param chunkSize defines size of byte chunk instead of default one.
+     *                  chunkSize &lt;= 0 means default.
+     * @param tokenCacheSize defines the number of strings the cache used by 
+     *                  {@link #readToken(int)} and 
+     *                  {@link #readWhileInterned(CharPredicate)} holds 
+     *                  instead of default one. tokenCacheSize &lt;= 0 means 
+     *                  default.
+     * @return root {@code BranchReader} object
+     */
+    static public BranchReader create(final Reader source, 
+            final int chunkSize, final int tokenCacheSize) {
+        Root root = new Root(source, chunkSize);
+        if(tokenCacheSize > 0) {
+            root.tokenCacheSize = tokenCacheSize;
+        }
+        return root.root();
+    }
+    
     /**
      * A factory method for creation of an {@code BranchReader} object of 
      * the concrete implementation based on the openned underlying
      * {@code InputStream}. Reads and parses BOM if presents. Overwrites charset
      * defined by BOM with {@code encoding} if {@code overwriteBOM} is 
-     * {@code true}. Applies {@code encoding} charser if there is no BOM.
+     * {@code true}. Applies {@code encoding} charser if there is no BOM. If 
+     * there is neither BOM nor {@code encoding}, the charset is guessed by the 
+     * first bytes with {@link CharsetDetector}, UTF-8 is applied if it fails. 
+     * The {@code source} need not support mark.
+     * <p>
+     * Note the behaviour changed with the charset detection:
+     * <ul>
+     * <li>{@code encoding} is applied if there is no BOM even if 
+     * {@code overwriteBOM} is {@code false}, UTF-8 was applied before;</li>
+     * <li>if {@code encoding} is {@code null}, the method blocks until 
+     * {@link CharsetDetector#DEFAULT_SAMPLE_SIZE} bytes are read or the end of 
+     * {@code source} is reached, so an interactive {@code source} must be 
+     * given {@code encoding}.</li>
+     * </ul>
      * 
      * @param source   the underlying {@code InputStream}.
      * @param encoding the charset name to apply if there is no BOM or 
-     *                 {@code overwriteBOM} is {@code true}.
+     *                 {@code overwriteBOM} is {@code true}, {@code null} to 
+     *                 guess it.
      * @param overwriteBOM the flag signaling whether to apply {@code encoding}
      *                     charset regarless if there is BOM.
      * @param chunkSize defines size of byte chunk instead of default one.
@@ -200,29 +616,221 @@ abstract public class BranchReader extends Reader {
     static public BranchReader create(final InputStream source, 
             final String encoding, final boolean overwriteBOM,
             final int chunkSize) throws IOException {
-        String charsetName = new BOM().test(source);
-        InputStream input = source;
+        BOMInputStream input = new BOMInputStream(source, 
+                encoding == null ? CharsetDetector.DEFAULT_SAMPLE_SIZE : 0);
+        String charsetName = input.getCharsetName();
         if(encoding != null) {
-            if(overwriteBOM) {
+            if(overwriteBOM || charsetName == null) {
                 charsetName = encoding;
             }
+        } else if(charsetName == null && input.getDetection() != null && 
+                !"US-ASCII".equals(input.getDetection().getCharsetName())) {
+            /*
+             * ASCII is left to UTF-8 as the rest of data may be not ASCII
+             */
+            charsetName = input.getDetection().getCharsetName();
         }
+        return BranchReader.create(input, charsetName, chunkSize);
+    }
+    
+    /**
+     * Creates {@code BranchReader} object decoding the {@code input} with the 
+     * charset, UTF-8 if it is {@code null}.
+     */
+    static private BranchReader create(final InputStream input, 
+            final String charsetName, final int chunkSize) throws IOException {
         if("UTF-7".equals(charsetName)) {
-            input = new UTF7InputStream(input);
-            charsetName = "UTF-16BE";
+            return BranchReader.create(new InputStreamReader(input, 
+                    UTF7Charset.INSTANCE), chunkSize);
+        }
+        return BranchReader.create(new InputStreamReader(input, 
+                charsetName == null ? "UTF-8" : charsetName), chunkSize);
+    }
+    
+    /**
+     * A factory method for creation of an {@code BranchReader} object of 
+     * the concrete implementation based on the openned underlying
+     * {@code InputStream}. Reads and parses BOM if presents. If there is no 
+     * BOM, the first bytes are decoded with each of the {@code candidates} 
+     * concurrently, every one from its own branch of 
+     * {@code BranchInputStream}. The candidates meeting malformed or 
+     * unmappable input are dropped, and the most plausible text of the rest 
+     * wins, the earlier candidate if equal. The winner reads the source 
+     * from the beginning again without rereading the underlying stream, the 
+     * other branches are closed.
+     * 
+     * @param source   the underlying {@code InputStream}.
+     * @param candidates the charset names to try
+     * @param chunkSize defines size of byte chunk instead of default one.
+     *                  chunkSize &lt;= 0 means default.
+     * @return root {@code BranchReader} object
+     * @throws IOException underlying IOException or if no candidate can 
+     *                  decode the source
+     * @throws IllegalArgumentException if there are no candidates
+     */
+    static public BranchReader create(final InputStream source, 
+            final String[] candidates, final int chunkSize) throws IOException {
+        if(candidates.length == 0) {
+            throw new IllegalArgumentException("No candidates.");
+        }
+        BOMInputStream input = new BOMInputStream(source, 0);
+        if(input.getCharsetName() != null) {
+            return BranchReader.create(input, input.getCharsetName(), 
+                    chunkSize);
+        }
+        BranchInputStream origin = BranchInputStream.create(input);
+        BranchInputStream[] probes = origin.branch(candidates.length);
+        double[] scores;
+        try {
+            /*
+             * the branches of BranchInputStream publish the chunks filled, 
+             * so the probes may read them in different threads
+             */
+            scores = IntStream.range(0, candidates.length).parallel()
+                    .mapToDouble(i -> probe(probes[i], candidates[i])).toArray();
+        } catch(UncheckedIOException ex) {
+            origin.close();
+            throw ex.getCause();
+        } finally {
+            for(BranchInputStream probe: probes) {
+                probe.close();
+            }
+        }
+        int winner = -1;
+        for(int i = 0; i < scores.length; i++) {
+            if(!Double.isNaN(scores[i]) && 
+                    (winner < 0 || scores[i] > scores[winner])) {
+                winner = i;
+            }
+        }
+        if(winner < 0) {
+            origin.close();
+            throw new IOException("Cannot decode with any of the candidates.");
+        }
+        BranchInputStream replay = origin.branch(1)[0];
+        origin.close();
+        return BranchReader.create(replay, candidates[winner], chunkSize);
+    }
+    
+    /**
+     * Decodes the first bytes of the {@code input} with the charset and 
+     * returns the plausibility of the text or {@code Double.NaN} if it cannot 
+     * be decoded.
+     */
+    static private double probe(final InputStream input, 
+            final String charsetName) {
+        CharsetDecoder decoder;
+        try {
+            decoder = Charset.forName(charsetName).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+        } catch(IllegalArgumentException ex) {
+            return Double.NaN;
+        }
+        byte[] sample = new byte[CharsetDetector.DEFAULT_SAMPLE_SIZE];
+        int length = 0;
+        try {
+            int n;
+            while(length < sample.length && 
+                    (n = input.read(sample, length, sample.length - length)) > 0) {
+                length += n;
+            }
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        boolean endOfInput = length < sample.length;
+        CharBuffer text = CharBuffer.allocate(
+                (int)Math.ceil(length * decoder.maxCharsPerByte()) + 1);
+        if(decoder.decode(ByteBuffer.wrap(sample, 0, length), text, endOfInput)
+                .isError() || 
+                endOfInput && decoder.flush(text).isError()) {
+            return Double.NaN;
         }
-        if(charsetName == null) {
-            charsetName = "UTF-8";
+        text.flip();
+        return plausibility(text);
+    }
+    
+    /**
+     * Returns the plausibility of the text from -1 to 1. Letters, digits, 
+     * spaces and punctuation count for the text, controls, private use and 
+     * unassigned characters, changing the script inside a word and a capital 
+     * letter after a small one count against it.
+     */
+    static private double plausibility(final CharBuffer text) {
+        if(!text.hasRemaining()) {
+            return 0;
+        }
+        long score = 0;
+        int count = 0;
+        Character.UnicodeScript script = Character.UnicodeScript.COMMON;
+        boolean small = false;
+        for(int i = text.position(); i < text.limit(); ) {
+            int c = Character.codePointAt(text, i - text.position());
+            i += Character.charCount(c);
+            count++;
+            int type = Character.getType(c);
+            switch(type) {
+                case Character.CONTROL:
+                    score += c == '\t' || c == '\n' || c == '\r' || 
+                            c == '\f' ? 1 : -1;
+                    script = Character.UnicodeScript.COMMON;
+                    break;
+                case Character.UNASSIGNED:
+                case Character.PRIVATE_USE:
+                case Character.SURROGATE:
+                    score--;
+                    break;
+                case Character.UPPERCASE_LETTER:
+                case Character.LOWERCASE_LETTER:
+                case Character.TITLECASE_LETTER:
+                case Character.MODIFIER_LETTER:
+                case Character.OTHER_LETTER:
+                case Character.NON_SPACING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                    Character.UnicodeScript current = 
+                            Character.UnicodeScript.of(c);
+                    score += (script == Character.UnicodeScript.COMMON || 
+                            current == Character.UnicodeScript.INHERITED || 
+                            current == script) && 
+                            !(small && type == Character.UPPERCASE_LETTER) ? 
+                            1 : -1;
+                    if(current != Character.UnicodeScript.INHERITED) {
+                        script = current;
+                    }
+                    break;
+                case Character.DECIMAL_DIGIT_NUMBER:
+                case Character.SPACE_SEPARATOR:
+                case Character.LINE_SEPARATOR:
+                case Character.PARAGRAPH_SEPARATOR:
+                case Character.CONNECTOR_PUNCTUATION:
+                case Character.DASH_PUNCTUATION:
+                case Character.START_PUNCTUATION:
+                case Character.END_PUNCTUATION:
+                case Character.INITIAL_QUOTE_PUNCTUATION:
+                case Character.FINAL_QUOTE_PUNCTUATION:
+                case Character.OTHER_PUNCTUATION:
+                    score++;
+                    script = Character.UnicodeScript.COMMON;
+                    break;
+                default:
+                    /*
+                     * symbols are rare in a text but not wrong
+                     */
+                    script = Character.UnicodeScript.COMMON;
+                    break;
+            }
+            small = type == Character.LOWERCASE_LETTER || 
+                    small && (type == Character.NON_SPACING_MARK || 
+                    type == Character.COMBINING_SPACING_MARK);
         }
-        return BranchReader.create(new InputStreamReader(input, charsetName),
-                chunkSize);
+        return (double)score / count;
     }
     
     /**
      * A factory method for creation of an {@code BranchReader} object of 
      * the concrete implementation based on the openned underlying
-     * {@code InputStream}. Reads and parses BOM if presents. Applies 
-     * UTF-8 charser if there is no BOM.
+     * {@code InputStream}. Reads and parses BOM if presents. Guesses the 
+     * charset if there is no BOM and applies UTF-8 charser if it fails.
      * 
      * @param source   the underlying {@code InputStream}.
      * @return root {@code BranchReader} object
@@ -233,88 +841,810 @@ abstract public class BranchReader extends Reader {
     }
     
     /**
-     * The class {@code Chunk} is an auxiliary class to support a singly 
-     * linked list of data pieces read from the underlying {@code Reader}. 
-     * <p>
-     * In order to use memory sparingly we point the end chunk which is a point 
-     * of grouth and every branch points its currently read chunk. Thus, chunks 
-     * read by all branches are objects for the GC.
+     * Powers of ten exactly representable by {@code double}.
      */
-    private static class Chunk {
+    static final private double[] POWERS_OF_TEN = new double[]{
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 
+        1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    /**
+     * The class {@code Memo} is the result of a rule applied at a position of 
+     * the data.
+     */
+    public static final class Memo {
         /**
-         * The actual chunk length.
+         * The id of the rule.
          */
-        private int length = 0;
+        private final int ruleId;
         /**
-         * The {@code char} array to contain the data chunk.
+         * The position the rule was applied at.
          */
-        private char buffer[] = null;
+        private final long start;
         /**
-         * The pointer to the next chunk.
+         * The position the rule ended at.
          */
-        private Chunk next = null;
+        private final long end;
         /**
-         * An offset of the chunk's starting position from the whole data's one.
+         * The result of the rule.
          */
-        private long offset = 0;
+        private final Object result;
+
+        private Memo(final int ruleId, final long start, final long end, 
+                final Object result) {
+            this.ruleId = ruleId;
+            this.start = start;
+            this.end = end;
+            this.result = result;
+        }
 
         /**
-         * Creates a chunk of predefined size.
-         * @param chunkSize size of memory in {@code char}s to allocate for the 
-         * chunk.
+         * Returns the id of the rule.
+         * @return the id of the rule
          */
-        private Chunk(final int chunkSize) {
-            buffer = new char[chunkSize];
+        public int getRuleId() {
+            return ruleId;
+        }
+
+        /**
+         * Returns the position the rule was applied at.
+         * @return the start position
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the position the rule ended at.
+         * @return the end position
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns the result of the rule.
+         * @return the result
+         */
+        public Object getResult() {
+            return result;
         }
     }
 
     /**
-     * The class {@code Root} is an infrastructure holder for the <i>tree</i> of 
-     * {@code BranchReader} objects.
+     * The class {@code Checkpoint} is a saved state of a 
+     * {@code BranchReader} to return to.
      */
-    private static class Root {
+    public static final class Checkpoint {
+        /**
+         * The {@code BranchReader} the checkpoint is taken from.
+         */
+        private final BranchReader owner;
+        /**
+         * The saved position.
+         */
+        private final long position;
+        /**
+         * The saved chunk. It keeps the data after the checkpoint.
+         */
+        private Chunk chunk;
+        /**
+         * The saved line.
+         */
+        private final int line;
+        /**
+         * The saved column.
+         */
+        private final int charPositionInLine;
+        /**
+         * The saved pushback buffer contents or {@code null} if it is empty.
+         */
+        private final String pushback;
+        /**
+         * Is the checkpoint released.
+         */
+        private boolean released = false;
 
-        private int chunkSize = DEFAULT_CHUNK_SIZE;
-    
+        private Checkpoint(final BranchReader owner, final long position, 
+                final Chunk chunk, final int line, 
+                final int charPositionInLine, final String pushback) {
+            this.owner = owner;
+            this.position = position;
+            this.chunk = chunk;
+            this.line = line;
+            this.charPositionInLine = charPositionInLine;
+            this.pushback = pushback;
+        }
+    }
+
+    /**
+     * The class {@code CursorTable} is a compact alternative to branches for 
+     * a great number of simultaneous readers, e.g. the stacks of GLR parsing. 
+     * A cursor is an index in the primitive arrays of positions, lines, 
+     * columns and pushback offsets, so it costs no object. A 
+     * {@code BranchReader} is allocated for the cursors exposed with 
+     * {@link #expose(int)} only.
+     * <p>
+     * The indices of closed cursors are reused. The table is not thread-safe 
+     * and is to be used by one thread at a time.
+     */
+    abstract public static class CursorTable implements Closeable {
+        
         /**
-         * The underlying {@code Reader}.
+         * Returns the number of open cursors.
+         * @return the number of open cursors
          */
-        private Reader source = null;
+        abstract public int size();
+        
         /**
-         * The flag indicating that the underlying {@code Reader} is fully read.
+         * Returns a new cursor at the state of the given one.
+         * @param cursor the cursor to fork
+         * @return the new cursor
+         * @throws java.io.IOException if the cursor or the table is closed
          */
-        private boolean isSourceEnded = false;
+        abstract public int fork(final int cursor) throws IOException;
+        
         /**
-         * The list of all branches of the tree.
+         * Reads a character at the cursor.
+         * @param cursor the cursor
+         * @return the character read or -1 if the end of the data has been 
+         *         reached or the cursor is closed
+         * @throws java.io.IOException underlying IOException
          */
-        private final HashMap<Long, Branch> branches = new HashMap<>();
+        abstract public int read(final int cursor) throws IOException;
+        
         /**
-         * The last chunk at the singly linked list of data pieces read from the 
-         * underlying {@code Reader}.
+         * Returns the next character at the cursor without consuming it.
+         * @param cursor the cursor
+         * @return the next character or -1 if the end of the data has been 
+         *         reached or the cursor is closed
+         * @throws java.io.IOException underlying IOException
          */
-        private Chunk endChunk = new Chunk(0);
+        abstract public int peek(final int cursor) throws IOException;
+        
         /**
-         * Generates ids for branches 
+         * Pushes back a character at the cursor.
+         * @param cursor the cursor
+         * @param c the character to push back
+         * @throws java.io.IOException if the cursor or the table is closed
          */
-        private final AtomicLong idGenerator = new AtomicLong(0);
+        abstract public void unread(final int cursor, final char c) 
+                throws IOException;
+        
         /**
-         * Historical name of the encoding or null
+         * Returns the position of the next character at the cursor.
+         * @param cursor the cursor
+         * @return the position
+         * @see BranchReader#getPosition() 
          */
-        private String encodingName = null;
+        abstract public long getPosition(final int cursor);
+        
         /**
-         * New line char (\n or \r, what met first)
+         * Returns the current line number at the cursor starting from 1.
+         * @param cursor the cursor
+         * @return the line number
          */
-        private char newLine = 0;
+        abstract public int getLine(final int cursor);
         
         /**
-         * Stores columns counts at lines
+         * Returns the current char position in line at the cursor starting 
+         * from 1.
+         * @param cursor the cursor
+         * @return the char position in line
          */
-        private Map<Integer, Integer> columnsCounts = 
-                Collections.synchronizedMap(new HashMap<>());
-       
+        abstract public int getCharPositionInLine(final int cursor);
+        
         /**
-         * The class {@code Branch} is a concrete implementation of the abstract
-         * {@code BranchReader}.
+         * Tests if the cursor is closed.
+         * @param cursor the cursor
+         * @return {@code true} if the cursor is closed
+         */
+        abstract public boolean isClosed(final int cursor);
+        
+        /**
+         * Closes the cursor. Its index may be returned by {@link #fork(int)} 
+         * after that.
+         * @param cursor the cursor
+         */
+        abstract public void close(final int cursor);
+        
+        /**
+         * Returns a new branch at the state of the cursor. The branch and the 
+         * cursor are independent after that.
+         * @param cursor the cursor
+         * @return the new branch
+         * @throws java.io.IOException if the cursor or the table is closed
+         */
+        abstract public BranchReader expose(final int cursor) 
+                throws IOException;
+        
+    }
+
+    /**
+     * The class {@code Chunk} is an auxiliary class to support a singly 
+     * linked list of data pieces read from the underlying {@code Reader}. 
+     * <p>
+     * In order to use memory sparingly we point the end chunk which is a point 
+     * of grouth and every branch points its currently read chunk. Thus, chunks 
+     * read by all branches are objects for the GC.
+     */
+    private static class Chunk {
+        /**
+         * The actual chunk length. The end chunk grows while other branches 
+         * read it, so the length is published to them with volatile semantics.
+         */
+        private volatile int length = 0;
+        /**
+         * The {@code char} array to contain the data chunk.
+         */
+        private char buffer[] = null;
+        /**
+         * The pointer to the next chunk.
+         */
+        private volatile Chunk next = null;
+        /**
+         * An offset of the chunk's starting position from the whole data's one.
+         */
+        private long offset = 0;
+
+        /**
+         * Creates a chunk of predefined size.
+         * @param chunkSize size of memory in {@code char}s to allocate for the 
+         * chunk.
+         */
+        private Chunk(final int chunkSize) {
+            buffer = new char[chunkSize];
+        }
+    }
+
+    /**
+     * The class {@code Pushback} is a branch's pushback buffer. It is a stack 
+     * of characters keeping them in the reverse order, so reading pops at 
+     * the array's end and pushing back never moves the rest. It is not 
+     * synchronized, the branch guards it.
+     */
+    private static class Pushback implements CharSequence {
+        /**
+         * The characters, the next one to read is the last.
+         */
+        private char[] chars;
+        /**
+         * The number of the characters.
+         */
+        private int length = 0;
+
+        /**
+         * Creates an empty buffer.
+         * @param capacity the initial capacity
+         */
+        private Pushback(final int capacity) {
+            chars = new char[Math.max(capacity, 16)];
+        }
+
+        /**
+         * Creates a buffer to read the text from.
+         * @param text the text
+         */
+        private Pushback(final CharSequence text) {
+            this(text.length());
+            push(text);
+        }
+
+        /**
+         * Creates a buffer of the characters already in the reverse order.
+         * @param reversed the array of the characters, the next one to read 
+         *                 is the last
+         * @param off the offset of the characters
+         * @param len the number of the characters
+         */
+        private Pushback(final char[] reversed, final int off, final int len) {
+            this(len);
+            System.arraycopy(reversed, off, chars, 0, len);
+            length = len;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            if(index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return chars[length - 1 - index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            char[] res = new char[end - start];
+            getChars(start, end, res, 0);
+            return new String(res);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+
+        /**
+         * Copies the characters to the array like 
+         * {@link String#getChars(int, int, char[], int)}.
+         */
+        private void getChars(final int srcBegin, final int srcEnd, 
+                final char[] dst, final int dstBegin) {
+            if(srcBegin < 0 || srcBegin > srcEnd || srcEnd > length) {
+                throw new IndexOutOfBoundsException("Range: " + srcBegin + 
+                        ".." + srcEnd);
+            }
+            for(int i = srcBegin, j = length - 1 - srcBegin; i < srcEnd; 
+                    i++, j--) {
+                dst[dstBegin + i - srcBegin] = chars[j];
+            }
+        }
+
+        /**
+         * Removes and returns the next character. The buffer must not be 
+         * empty.
+         */
+        private char pop() {
+            return chars[--length];
+        }
+
+        /**
+         * Removes the next {@code n} characters.
+         */
+        private void drop(final int n) {
+            length -= n;
+        }
+
+        /**
+         * Removes all the characters.
+         */
+        private void clear() {
+            length = 0;
+        }
+
+        /**
+         * Pushes the character back to be read next.
+         */
+        private void push(final char c) {
+            ensureCapacity(1);
+            chars[length++] = c;
+        }
+
+        /**
+         * Pushes the characters back to be read next in their order.
+         */
+        private void push(final char[] cbuf, final int off, final int len) {
+            ensureCapacity(len);
+            for(int i = off + len - 1; i >= off; i--) {
+                chars[length++] = cbuf[i];
+            }
+        }
+
+        /**
+         * Pushes the text back to be read next.
+         */
+        private void push(final CharSequence text) {
+            ensureCapacity(text.length());
+            for(int i = text.length() - 1; i >= 0; i--) {
+                chars[length++] = text.charAt(i);
+            }
+        }
+
+        private void ensureCapacity(final int n) {
+            if(length + n > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, 
+                        length + n));
+            }
+        }
+    }
+
+    /**
+     * The class {@code ChunkSequence} is a {@code CharSequence} view over a 
+     * range of data stored in the chunks. The data once read into a chunk never 
+     * changes, so the view stays valid while the branch moves on.
+     */
+    private static class ChunkSequence implements CharSequence {
+        /**
+         * The chunk to start searching from.
+         */
+        private final Chunk first;
+        /**
+         * The position of the view's first char.
+         */
+        private final long start;
+        /**
+         * The view's length.
+         */
+        private final int length;
+        /**
+         * The chunk of the last accessed char to find the next one quickly.
+         */
+        private Chunk current;
+
+        /**
+         * Creates a view over the range of data.
+         * @param first a chunk containing or preceding {@code start}
+         * @param start the position of the view's first char
+         * @param length the view's length
+         */
+        private ChunkSequence(final Chunk first, final long start, 
+                final int length) {
+            this.first = first;
+            this.start = start;
+            this.length = length;
+            current = first;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            if(index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index + 
+                        ", length: " + length);
+            }
+            long target = start + index;
+            Chunk chunk = current;
+            if(target < chunk.offset) {
+                chunk = first;
+            }
+            while(target >= chunk.offset + chunk.length) {
+                chunk = chunk.next;
+            }
+            current = chunk;
+            return chunk.buffer[(int)(target - chunk.offset)];
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            if(start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start: " + start + 
+                        ", end: " + end + ", length: " + length);
+            }
+            return new ChunkSequence(current.offset <= this.start + start ? 
+                    current : first, this.start + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            char[] res = new char[length];
+            Chunk chunk = first;
+            long target = start;
+            int copied = 0;
+            while(copied < length) {
+                while(target >= chunk.offset + chunk.length) {
+                    chunk = chunk.next;
+                }
+                int from = (int)(target - chunk.offset);
+                int n = Math.min(chunk.length - from, length - copied);
+                System.arraycopy(chunk.buffer, from, res, copied, n);
+                copied += n;
+                target += n;
+            }
+            return new String(res);
+        }
+    }
+
+    /**
+     * The class {@code LineSpliterator} is a {@code Spliterator} of the lines 
+     * over a range of data stored in the chunks. It splits the range in the 
+     * middle moved to the next line break.
+     */
+    private static class LineSpliterator implements Spliterator<String> {
+        /**
+         * The least number of chars worth splitting.
+         */
+        static final private int MIN_SPLIT = 0x400;
+        /**
+         * The chunk containing or preceding {@code position}.
+         */
+        private Chunk chunk;
+        /**
+         * The position of the next line.
+         */
+        private long position;
+        /**
+         * The end of the range.
+         */
+        private final long end;
+
+        /**
+         * Creates a spliterator over the range of data.
+         * @param chunk a chunk containing or preceding {@code position}
+         * @param position the start of the range
+         * @param end the end of the range
+         */
+        private LineSpliterator(final Chunk chunk, final long position, 
+                final long end) {
+            this.chunk = chunk;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super String> action) {
+            if(position >= end) {
+                return false;
+            }
+            seek(position);
+            StringBuilder sb = null;
+            String line = null;
+            while(line == null) {
+                int from = (int)(position - chunk.offset);
+                int to = (int)Math.min(chunk.length, end - chunk.offset);
+                int i = from;
+                while(i < to && chunk.buffer[i] != '\n' && 
+                        chunk.buffer[i] != '\r') {
+                    i++;
+                }
+                if(sb == null && i < to) {
+                    line = new String(chunk.buffer, from, i - from);
+                } else {
+                    if(sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    sb.append(chunk.buffer, from, i - from);
+                    if(i < to || chunk.offset + to >= end) {
+                        line = sb.toString();
+                    }
+                }
+                position = chunk.offset + i;
+                if(line == null) {
+                    chunk = chunk.next;
+                }
+            }
+            skipLineBreak();
+            action.accept(line);
+            return true;
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            if(end - position < MIN_SPLIT) {
+                return null;
+            }
+            Chunk first = seek(position);
+            long start = position;
+            long boundary = start + (end - start) / 2;
+            while(boundary < end) {
+                char c = seek(boundary).buffer[(int)(boundary - chunk.offset)];
+                if(c == '\n' || c == '\r') {
+                    break;
+                }
+                boundary++;
+            }
+            if(boundary >= end) {
+                chunk = first;
+                return null;
+            }
+            position = boundary;
+            skipLineBreak();
+            return new LineSpliterator(first, start, position);
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL | 
+                    Spliterator.IMMUTABLE;
+        }
+        
+        /**
+         * Makes the chunk the one containing the target position.
+         * @param target the position before the end of the range
+         * @return the chunk
+         */
+        private Chunk seek(final long target) {
+            while(target >= chunk.offset + chunk.length) {
+                chunk = chunk.next;
+            }
+            return chunk;
+        }
+        
+        /**
+         * Moves the position over the line break at it, if there is one.
+         */
+        private void skipLineBreak() {
+            if(position < end) {
+                char c = seek(position).buffer[(int)(position - chunk.offset)];
+                position++;
+                if(c == '\r' && position < end && 
+                        seek(position).buffer[(int)(position - chunk.offset)] 
+                        == '\n') {
+                    position++;
+                }
+            }
+        }
+    }
+
+    /**
+     * The class {@code Root} is an infrastructure holder for the <i>tree</i> of 
+     * {@code BranchReader} objects.
+     */
+    private static class Root {
+        
+        /**
+         * The class {@code BranchRef} is a weak reference to a registered 
+         * member of the tree, a branch or a cursor table, remembering its id 
+         * to remove it from the list when the member is lost.
+         */
+        private static class BranchRef extends WeakReference<Object> {
+            
+            /**
+             * The id of the member.
+             */
+            private final long id;
+            /**
+             * The number of the branches the member stands for.
+             */
+            private int weight = 1;
+
+            private BranchRef(final Object member, final long id, 
+                    final ReferenceQueue<Object> queue) {
+                super(member, queue);
+                this.id = id;
+            }
+        }
+        
+        /**
+         * The class {@code Group} is the state the branches created together 
+         * start from. The branches are handles sharing it until their first 
+         * use, and the group is registered instead of them.
+         */
+        private static class Group {
+            
+            /**
+             * The id of the group. The ids of its branches follow it.
+             */
+            private final long id;
+            /**
+             * The parent's position.
+             */
+            private final long position;
+            /**
+             * The parent's chunk.
+             */
+            private final Chunk chunk;
+            /**
+             * The parent's line.
+             */
+            private final int line;
+            /**
+             * The parent's column.
+             */
+            private final int charPositionInLine;
+            /**
+             * The parent's pushback buffer contents or {@code null}.
+             */
+            private final String pushback;
+            /**
+             * The branches not used yet, {@code null} for the used or closed 
+             * ones.
+             */
+            private final Branch[] handles;
+            /**
+             * The number of the branches not used yet.
+             */
+            private int pending;
+            /**
+             * The reference the group is registered with.
+             */
+            private BranchRef ref = null;
+
+            private Group(final long id, final int count, final Branch parent) {
+                this.id = id;
+                position = parent.position;
+                chunk = parent.chunk;
+                line = parent.line;
+                charPositionInLine = parent.charPositionInLine;
+                pushback = parent.pushbackBuffer == null || 
+                        parent.pushbackBuffer.length() == 0 ? null : 
+                        parent.pushbackBuffer.toString();
+                handles = new Branch[count];
+                pending = count;
+            }
+            
+            /**
+             * Removes the branch from the group. Must be called holding the 
+             * lock.
+             * 
+             * @param handle the branch
+             * @return the number of the branches still pending
+             */
+            private int release(final Branch handle) {
+                int index = (int)(handle.id - id - 1);
+                if(handles[index] == handle) {
+                    handles[index] = null;
+                    ref.weight = --pending;
+                }
+                return pending;
+            }
+        }
+
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        
+        /**
+         * The lock guarding the tree's shared state. It is not a monitor in 
+         * order not to pin a virtual thread to its carrier while the 
+         * underlying {@code Reader} is being read.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+    
+        /**
+         * The underlying {@code Reader}.
+         */
+        private Reader source = null;
+        /**
+         * The flag indicating that the underlying {@code Reader} is fully read.
+         */
+        private boolean isSourceEnded = false;
+        /**
+         * The list of all branches and cursor tables of the tree keeping it 
+         * open. They are weakly referenced, so a branch the user has lost 
+         * without closing does not keep its chunks forever.
+         */
+        private final HashMap<Long, BranchRef> branches = new HashMap<>();
+        /**
+         * The queue of the references to the branches lost without closing.
+         */
+        private final ReferenceQueue<Object> abandoned = new ReferenceQueue<>();
+        /**
+         * The number of the branches lost without closing.
+         */
+        private volatile long abandonedCount = 0;
+        /**
+         * The last chunk at the singly linked list of data pieces read from the 
+         * underlying {@code Reader}.
+         */
+        private Chunk endChunk = new Chunk(0);
+        /**
+         * Generates ids for branches 
+         */
+        private final AtomicLong idGenerator = new AtomicLong(0);
+        /**
+         * Historical name of the encoding or null
+         */
+        private String encodingName = null;
+        /**
+         * New line char (\n or \r, what met first)
+         */
+        private char newLine = 0;
+        
+        /**
+         * The number of strings the token cache holds.
+         */
+        private int tokenCacheSize = DEFAULT_TOKEN_CACHE_SIZE;
+        
+        /**
+         * The token cache created on the first use.
+         */
+        private volatile TokenCache tokenCache = null;
+        
+        /**
+         * The memo of the rules results created on the first use.
+         */
+        private MemoTable memoTable = null;
+        
+        /**
+         * Stores columns counts at lines
+         */
+        private Map<Integer, Integer> columnsCounts = 
+                Collections.synchronizedMap(new HashMap<>());
+       
+        /**
+         * The class {@code Branch} is a concrete implementation of the abstract
+         * {@code BranchReader}.
          */
         private class Branch extends BranchReader {
             /**
@@ -329,15 +1659,26 @@ abstract public class BranchReader extends Reader {
             /**
              * Is the {@code Branch} closed.
              */
-            private AtomicBoolean isClosed = new AtomicBoolean(false);
+            private volatile boolean closed = false;
             /**
              * {@code Branch}'s id to distinguish thorously
              */
-            private long id = idGenerator.incrementAndGet();
+            private final long id;
+            /**
+             * The lower bound of the position the other threads read to evict 
+             * the memo. It is updated on the chunk change and wherever the 
+             * position may go back, between the updates the position only 
+             * grows.
+             */
+            private volatile long floor = 0;
             /**
              * Pushback buffer
              */
-            private StringBuffer pushbackBuffer = null;
+            private Pushback pushbackBuffer = null;
+            /**
+             * The group the branch is a handle of until its first use.
+             */
+            private volatile Group group;
             /**
              *  Line of text
              */
@@ -347,96 +1688,1087 @@ abstract public class BranchReader extends Reader {
              */
             private int charPositionInLine = 1;
             /**
-             *  end position if was trimmed
+             *  end position if was trimmed
+             */
+            private long endPosition = -1;
+            /**
+             * The number of the checkpoints not released.
+             */
+            private int checkpoints = 0;
+            /**
+             * The lowest position of the checkpoints not released.
+             */
+            private volatile long checkpointPosition = Long.MAX_VALUE;
+            /**
+             * The lock guarding the branch's state. It is not a monitor in 
+             * order not to pin a virtual thread to its carrier while the 
+             * underlying {@code Reader} is being read. It is {@code null} 
+             * if the branch is thread-confined or not used yet.
+             */
+            private ReentrantLock branchLock = null;
+
+            /**
+             * Creates an independent branch at the start of the data.
+             * 
+             * @param id        the id of the new branch
+             */
+            private Branch(final long id) {
+                this.id = id;
+                branchLock = new ReentrantLock();
+            }
+
+            /**
+             * Creates a handle of the group. It takes the group's state and 
+             * its lock on the first use.
+             * 
+             * @param group     the group of the branches created together
+             * @param id        the id of the new branch
+             */
+            private Branch(final Group group, final long id) {
+                this.id = id;
+                this.group = group;
+            }
+
+            @Override
+            public BranchReader[] branch(final int count, 
+                    final boolean threadConfined) throws IOException {
+                lockBranch();
+                try {
+                    return doBranch(count, threadConfined);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private BranchReader[] doBranch(final int count, 
+                    final boolean threadConfined) throws IOException {
+                Root.this.lock.lock();
+                try {
+                    BranchReader[] res;
+
+                    if (isClosed()) {
+                        throw new IOException("Cannot branch closed reader");
+                    }
+                    res = new BranchReader[count];
+                    /*
+                     * the ids are taken at once for the group and its 
+                     * branches, and only the group is registered
+                     */
+                    Group newGroup = new Group(
+                            idGenerator.getAndAdd(count + 1) + 1, count, this);
+                    for (int i = 0; i < count; i++) {
+                        Branch branch = threadConfined ? 
+                                new ConfinedBranch(newGroup, newGroup.id + 1 + i) : 
+                                new Branch(newGroup, newGroup.id + 1 + i);
+                        newGroup.handles[i] = branch;
+                        res[i] = branch;
+                    }
+                    newGroup.ref = register(newGroup, newGroup.id);
+                    newGroup.ref.weight = count;
+                    return res;
+                } finally {
+                    Root.this.lock.unlock();
+                }
+            }
+
+            @Override
+            public boolean isThreadConfined() {
+                return false;
+            }
+
+            /**
+             * Takes the lock guarding the branch's state.
+             */
+            void lockBranch() {
+                materialize();
+                branchLock.lock();
+            }
+
+            /**
+             * Makes the handle an independent branch on its first use: takes 
+             * the group's state, the own lock and the own entry in the 
+             * branches list.
+             */
+            final void materialize() {
+                if(group == null) {
+                    return;
+                }
+                Root.this.lock.lock();
+                try {
+                    Group g = group;
+                    if(g == null) {
+                        return;
+                    }
+                    position = g.position;
+                    floor = position;
+                    chunk = g.chunk;
+                    line = g.line;
+                    charPositionInLine = g.charPositionInLine;
+                    if(g.pushback != null) {
+                        pushbackBuffer = new Pushback(g.pushback);
+                    }
+                    if(!isThreadConfined()) {
+                        branchLock = new ReentrantLock();
+                    }
+                    if(!closed) {
+                        branches.put(id, new BranchRef(this, id, abandoned));
+                        if(g.release(this) == 0) {
+                            branches.remove(g.id);
+                        }
+                    }
+                    group = null;
+                } finally {
+                    Root.this.lock.unlock();
+                }
+            }
+
+            /**
+             * Releases the lock guarding the branch's state.
+             */
+            void unlockBranch() {
+                branchLock.unlock();
+            }
+
+            @Override
+            public boolean isClosed() {
+                return closed;
+            }
+            
+            private void calculateLineAndColumnPushback(final char c) {
+                if(c == '\n' || c == '\r') {
+                    if(c == Root.this.newLine) {
+                        line--;
+                        charPositionInLine = columnsCounts.get(line);
+                    }
+                } else {
+                    if(charPositionInLine > 1) {
+                        charPositionInLine--;
+                    }
+                }
+            }
+            
+            private void calculateLineAndColumn(final char c) {
+                if(c == '\n' || c == '\r') {
+                    if(Root.this.newLine == 0) {
+                        Root.this.lock.lock();
+                        try {
+                            if (Root.this.newLine == 0) {
+                                Root.this.newLine = c;
+                            }
+                        } finally {
+                            Root.this.lock.unlock();
+                        }
+                    }
+                    if(c == Root.this.newLine) {
+                        columnsCounts.putIfAbsent(line, charPositionInLine);
+                        line++;
+                        charPositionInLine = 1;
+                    }
+                } else {
+                    charPositionInLine++;
+                }
+            }
+            
+            /**
+             * Updates the line and column after the run of chars. Only line 
+             * breaks are handled one by one, the other chars just increase 
+             * the column together.
+             */
+            private void calculateLineAndColumn(final char[] cbuf, 
+                    final int off, final int len) {
+                int plain = 0;
+                for(int i = off; i < off + len; i++) {
+                    char c = cbuf[i];
+                    if(c > '\r' || c != '\n' && c != '\r') {
+                        plain++;
+                    } else {
+                        charPositionInLine += plain;
+                        plain = 0;
+                        calculateLineAndColumn(c);
+                    }
+                }
+                charPositionInLine += plain;
+            }
+            
+            /**
+             * Makes {@code chunk} the one containing the current position 
+             * reading the underlying {@code Reader} if needed.
+             * 
+             * @return {@code false} if there is no more data
+             * @throws IOException underlying IOException
+             */
+            private boolean nextChunk() throws IOException {
+                floor = position;
+                if (position >= endChunk.offset + endChunk.length) {
+                    fill(position + 1);
+                }
+                while (position >= chunk.offset + chunk.length) {
+                    if (chunk.next == null) {
+                        return false;
+                    }
+                    chunk = chunk.next;
+                }
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                lockBranch();
+                try {
+                    return doRead();
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private int doRead() throws IOException {
+                char c;
+                if(closed) {
+                    return -1;
+                }
+                if(pushbackBuffer == null || pushbackBuffer.length == 0) {
+                    if (position >= chunk.offset + chunk.length && !nextChunk() 
+                            || endPosition >= 0 && position >= endPosition) {
+                        return -1;
+                    }
+                    c = chunk.buffer[(int)(position - chunk.offset)];
+                    position++;
+                } else {
+                    c = pushbackBuffer.pop();
+                }
+                if(c > '\r') {
+                    charPositionInLine++;
+                } else {
+                    calculateLineAndColumn(c);
+                }
+                return c;
+            }
+
+            @Override
+            public int peek() throws IOException {
+                lockBranch();
+                try {
+                    return doPeek();
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private int doPeek() throws IOException {
+                if(closed) {
+                    return -1;
+                }
+                if(pushbackBuffer != null && pushbackBuffer.length() > 0) {
+                    return pushbackBuffer.charAt(0);
+                }
+                if (position >= chunk.offset + chunk.length && !nextChunk() 
+                        || endPosition >= 0 && position >= endPosition) {
+                    return -1;
+                }
+                return chunk.buffer[(int)(position - chunk.offset)];
+            }
+
+            @Override
+            public CharSequence peek(final int n) throws IOException {
+                lockBranch();
+                try {
+                    return doPeek(n);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private CharSequence doPeek(final int n) throws IOException {
+                int pushed = pushbackBuffer == null ? 0 : 
+                        pushbackBuffer.length();
+                if(closed || n <= 0) {
+                    return "";
+                }
+                if(pushed >= n) {
+                    return pushbackBuffer.subSequence(0, n);
+                }
+                long upTo = position + n - pushed;
+                if(endPosition >= 0 && upTo > endPosition) {
+                    upTo = endPosition;
+                }
+                if (upTo > endChunk.offset + endChunk.length) {
+                    fill(upTo);
+                }
+                upTo = Math.min(upTo, endChunk.offset + endChunk.length);
+                CharSequence res = new ChunkSequence(chunk, position, 
+                        (int)Math.max(upTo - position, 0));
+                if(pushed > 0) {
+                    /*
+                     * pushed back chars are not in chunks, so copy
+                     */
+                    res = new StringBuilder(pushed + res.length())
+                            .append(pushbackBuffer).append(res);
+                }
+                return res;
+            }
+
+            @Override
+            public int lookAhead(final int offset) throws IOException {
+                lockBranch();
+                try {
+                    return doLookAhead(offset);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private int doLookAhead(final int offset) throws IOException {
+                int pushed = pushbackBuffer == null ? 0 : 
+                        pushbackBuffer.length();
+                if(offset < 0) {
+                    throw new IndexOutOfBoundsException("Negative offset: " + 
+                            offset);
+                }
+                if(closed) {
+                    return -1;
+                }
+                if(offset < pushed) {
+                    return pushbackBuffer.charAt(offset);
+                }
+                long target = position + offset - pushed;
+                if(endPosition >= 0 && target >= endPosition) {
+                    return -1;
+                }
+                if (target >= endChunk.offset + endChunk.length) {
+                    fill(target + 1);
+                }
+                Chunk current = chunk;
+                while (target >= current.offset + current.length) {
+                    if (current.next == null) {
+                        return -1;
+                    }
+                    current = current.next;
+                }
+                return current.buffer[(int)(target - current.offset)];
+            }
+
+            @Override
+            public long skip(final long n) throws IOException {
+                lockBranch();
+                try {
+                    return doSkip(n);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private long doSkip(final long n) throws IOException {
+                long res = 0;
+                if(n < 0) {
+                    throw new IllegalArgumentException("skip value is negative");
+                }
+                if(closed) {
+                    return 0;
+                }
+                if(pushbackBuffer != null && pushbackBuffer.length() > 0) {
+                    res = Math.min(n, pushbackBuffer.length());
+                    for(int i = 0; i < res; i++) {
+                        calculateLineAndColumn(pushbackBuffer.charAt(i));
+                    }
+                    pushbackBuffer.drop((int)res);
+                }
+                while(res < n) {
+                    if (position >= chunk.offset + chunk.length && !nextChunk()) {
+                        break;
+                    }
+                    int from = (int)(position - chunk.offset);
+                    long count = Math.min(chunk.length - from, n - res);
+                    if(endPosition >= 0) {
+                        count = Math.min(count, endPosition - position);
+                    }
+                    if(count <= 0) {
+                        break;
+                    }
+                    calculateLineAndColumn(chunk.buffer, from, (int)count);
+                    position += count;
+                    res += count;
+                }
+                return res;
+            }
+
+            @Override
+            public long skipWhile(final CharPredicate predicate) 
+                    throws IOException {
+                lockBranch();
+                try {
+                    return doReadWhile(predicate, null);
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public long readWhile(final CharPredicate predicate, 
+                    final Appendable out) throws IOException {
+                lockBranch();
+                try {
+                    return doReadWhile(predicate, out);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            /**
+             * Consumes characters while they satisfy the {@code predicate}.
+             * 
+             * @param predicate the predicate the consumed characters satisfy
+             * @param out the {@code Appendable} to append the consumed 
+             *            characters to or {@code null} to skip them
+             * @return the number of characters consumed
+             * @throws IOException underlying IOException
              */
-            private long endPosition = -1;
+            private long doReadWhile(final CharPredicate predicate, 
+                    final Appendable out) throws IOException {
+                long res = 0;
+                if(closed) {
+                    return 0;
+                }
+                if(pushbackBuffer != null && pushbackBuffer.length() > 0) {
+                    int n = 0;
+                    while(n < pushbackBuffer.length() && 
+                            predicate.test(pushbackBuffer.charAt(n))) {
+                        calculateLineAndColumn(pushbackBuffer.charAt(n));
+                        n++;
+                    }
+                    if(out != null) {
+                        out.append(pushbackBuffer, 0, n);
+                    }
+                    pushbackBuffer.drop(n);
+                    res += n;
+                    if(pushbackBuffer.length() > 0) {
+                        return res;
+                    }
+                }
+                while(true) {
+                    if (position >= chunk.offset + chunk.length && !nextChunk()) {
+                        break;
+                    }
+                    char[] buffer = chunk.buffer;
+                    int from = (int)(position - chunk.offset);
+                    int to = chunk.length;
+                    if(endPosition >= 0) {
+                        to = (int)Math.min(to, endPosition - chunk.offset);
+                    }
+                    if(from >= to) {
+                        break;
+                    }
+                    int i = from;
+                    while(i < to && predicate.test(buffer[i])) {
+                        i++;
+                    }
+                    if(i > from) {
+                        if(out instanceof StringBuilder) {
+                            ((StringBuilder)out).append(buffer, from, i - from);
+                        } else if(out != null) {
+                            out.append(CharBuffer.wrap(buffer, from, i - from));
+                        }
+                        calculateLineAndColumn(buffer, from, i - from);
+                        position += i - from;
+                        res += i - from;
+                    }
+                    if(i < to) {
+                        break;
+                    }
+                }
+                return res;
+            }
+
+            @Override
+            public String readUntil(final char delimiter) throws IOException {
+                lockBranch();
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    doReadWhile(c -> c != delimiter, sb);
+                    if(doRead() < 0 && sb.length() == 0) {
+                        return null;
+                    }
+                    return sb.toString();
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public String readUntil(final String delimiter) throws IOException {
+                if(delimiter.isEmpty()) {
+                    throw new IllegalArgumentException("Delimiter cannot be empty.");
+                }
+                lockBranch();
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    char first = delimiter.charAt(0);
+                    int c;
+                    while(true) {
+                        doReadWhile(ch -> ch != first, sb);
+                        if((c = doRead()) < 0) {
+                            if(sb.length() == 0) {
+                                return null;
+                            }
+                            break;
+                        }
+                        int i = 1;
+                        while(i < delimiter.length() && 
+                                doLookAhead(i - 1) == delimiter.charAt(i)) {
+                            i++;
+                        }
+                        if(i == delimiter.length()) {
+                            doSkip(i - 1);
+                            break;
+                        }
+                        sb.append((char)c);
+                    }
+                    return sb.toString();
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public String readLine() throws IOException {
+                lockBranch();
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    doReadWhile(c -> c != '\n' && c != '\r', sb);
+                    int c = doRead();
+                    if(c < 0 && sb.length() == 0) {
+                        return null;
+                    }
+                    if(c == '\r' && doPeek() == '\n') {
+                        doRead();
+                    }
+                    return sb.toString();
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public int readInt() throws IOException {
+                lockBranch();
+                try {
+                    return (int)doReadLong(Integer.MIN_VALUE, Integer.MAX_VALUE);
+                } finally {
+                    unlockBranch();
+                }
+            }
 
+            @Override
+            public long readLong() throws IOException {
+                lockBranch();
+                try {
+                    return doReadLong(Long.MIN_VALUE, Long.MAX_VALUE);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private NumberFormatException notNumber() {
+                return new NumberFormatException("No valid number at line " + 
+                        line + ", column " + charPositionInLine);
+            }
+            
             /**
-             * Creates a branch with a parent if it is given
-             * 
-             * @param parent    a parent branch of the new branch or 
-             *                  {@code null} in the case of root
+             * Reads a decimal integer value within the range. The value is 
+             * accumulated negatively as {@code Long.parseLong} does, so 
+             * {@code min} is reachable.
              */
-            private Branch(final Branch parent) {
-                if (parent != null) { 
+            private long doReadLong(final long min, final long max) 
+                    throws IOException {
+                int i = 0;
+                int c = doLookAhead(0);
+                boolean negative = c == '-';
+                if(c == '-' || c == '+') {
+                    c = doLookAhead(++i);
+                }
+                if(c < '0' || c > '9') {
+                    throw notNumber();
+                }
+                long limit = negative ? min : -max;
+                long multmin = limit / 10;
+                long res = 0;
+                while(c >= '0' && c <= '9') {
+                    int digit = c - '0';
+                    if(res < multmin) {
+                        throw notNumber();
+                    }
+                    res *= 10;
+                    if(res < limit + digit) {
+                        throw notNumber();
+                    }
+                    res -= digit;
+                    c = doLookAhead(++i);
+                }
+                doSkip(i);
+                return negative ? res : -res;
+            }
+
+            @Override
+            public double readDouble() throws IOException {
+                lockBranch();
+                try {
+                    return doReadDouble();
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private double doReadDouble() throws IOException {
+                int i = 0;
+                int c = doLookAhead(0);
+                boolean negative = c == '-';
+                if(c == '-' || c == '+') {
+                    c = doLookAhead(++i);
+                }
+                long mantissa = 0;
+                int digits = 0;     // significant digits in mantissa
+                int scale = 0;      // decimal exponent of mantissa
+                boolean exact = true;
+                boolean any = false;
+                while(c >= '0' && c <= '9') {
+                    any = true;
+                    if(digits < 18) {
+                        if(mantissa > 0 || c > '0') {
+                            mantissa = mantissa * 10 + (c - '0');
+                            digits++;
+                        }
+                    } else {
+                        exact = false;
+                        scale++;
+                    }
+                    c = doLookAhead(++i);
+                }
+                if(c == '.') {
+                    int d = doLookAhead(i + 1);
+                    if(d >= '0' && d <= '9') {
+                        c = d;
+                        i++;
+                        while(c >= '0' && c <= '9') {
+                            any = true;
+                            if(digits < 18) {
+                                mantissa = mantissa * 10 + (c - '0');
+                                if(mantissa > 0) {
+                                    digits++;
+                                }
+                                scale--;
+                            } else {
+                                exact = false;
+                            }
+                            c = doLookAhead(++i);
+                        }
+                    }
+                }
+                if(!any) {
+                    throw notNumber();
+                }
+                if(c == 'e' || c == 'E') {
+                    int j = i + 1;
+                    int d = doLookAhead(j);
+                    boolean negativeExponent = d == '-';
+                    if(d == '-' || d == '+') {
+                        d = doLookAhead(++j);
+                    }
+                    if(d >= '0' && d <= '9') {
+                        int exponent = 0;
+                        while(d >= '0' && d <= '9') {
+                            if(exponent < 100000) {
+                                exponent = exponent * 10 + (d - '0');
+                            }
+                            d = doLookAhead(++j);
+                        }
+                        scale += negativeExponent ? -exponent : exponent;
+                        i = j;
+                    }
+                }
+                double res;
+                if(mantissa == 0 && exact) {
+                    res = 0.0;
+                } else if(exact && digits <= 15 && scale >= -22 && 
+                        scale <= 22 + 15 - digits) {
                     /*
-                     * if the parent is given, just clone it
+                     * both the mantissa and the power of ten are exact, so 
+                     * one multiplication or division rounds correctly
                      */
-                    position = parent.position;
-                    chunk = parent.chunk;
-                    line = parent.line;
-                    charPositionInLine = parent.charPositionInLine;
-                    if(parent.pushbackBuffer != null) {
-                        pushbackBuffer = new StringBuffer(parent.pushbackBuffer);
+                    res = mantissa;
+                    if(scale < 0) {
+                        res /= POWERS_OF_TEN[-scale];
+                    } else if(scale > 22) {
+                        res = res * POWERS_OF_TEN[scale - 22] * 
+                                POWERS_OF_TEN[22];
+                    } else {
+                        res *= POWERS_OF_TEN[scale];
                     }
+                } else {
+                    res = Math.abs(Double.parseDouble(doPeek(i).toString()));
                 }
+                doSkip(i);
+                return negative ? -res : res;
             }
 
             @Override
-            public synchronized BranchReader[] branch(final int count) throws IOException {
-                synchronized(Root.this) {
-                    BranchReader[] res;
+            public long getPosition() {
+                lockBranch();
+                try {
+                    return position - (pushbackBuffer == null ? 0 : 
+                            pushbackBuffer.length());
+                } finally {
+                    unlockBranch();
+                }
+            }
 
-                    if (isClosed()) {
-                        throw new IOException("Cannot branch closed reader");
+            @Override
+            public Memo recall(final int ruleId) throws IOException {
+                lockBranch();
+                try {
+                    if(closed || pushbackBuffer != null && 
+                            pushbackBuffer.length() > 0) {
+                        return null;
                     }
-                    res = new BranchReader[count];
-                    for (int i = 0; i < count; i++) {
-                        res[i] = new Branch(this);
-                        branches.put(((Branch) res[i]).id, (Branch) res[i]);
+                    Memo res = Root.this.recall(position, ruleId);
+                    if(res == null || endPosition >= 0 && 
+                            res.end > endPosition) {
+                        return null;
                     }
+                    doSkip(res.end - position);
                     return res;
+                } finally {
+                    unlockBranch();
                 }
             }
 
             @Override
-            public boolean isClosed() {
-                return isClosed.get();
+            public Memo memoize(final int ruleId, final long start, 
+                    final Object result) {
+                lockBranch();
+                try {
+                    if(start < 0 || start > position) {
+                        throw new IllegalArgumentException(
+                                "Start is out of range: " + start);
+                    }
+                    if(closed || pushbackBuffer != null && 
+                            pushbackBuffer.length() > 0) {
+                        return null;
+                    }
+                    Memo res = new Memo(ruleId, start, position, result);
+                    floor = position;
+                    Root.this.memoize(res);
+                    return res;
+                } finally {
+                    unlockBranch();
+                }
             }
-            
-            private void calculateLineAndColumnPushback(final char c) {
-                if(c == '\n' || c == '\r') {
-                    if(c == Root.this.newLine) {
-                        line--;
-                        charPositionInLine = columnsCounts.get(line);
+
+            @Override
+            public Checkpoint checkpoint() throws IOException {
+                lockBranch();
+                try {
+                    if(closed) {
+                        throw new IOException(
+                                "Cannot checkpoint closed reader.");
                     }
-                } else {
-                    if(charPositionInLine > 1) {
-                        charPositionInLine--;
+                    if(checkpoints++ == 0 || position < checkpointPosition) {
+                        checkpointPosition = position;
+                    }
+                    return new Checkpoint(this, position, chunk, line, 
+                            charPositionInLine, pushbackBuffer == null || 
+                            pushbackBuffer.length() == 0 ? null : 
+                            pushbackBuffer.toString());
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public void restore(final Checkpoint checkpoint) 
+                    throws IOException {
+                lockBranch();
+                try {
+                    if(checkpoint.owner != this) {
+                        throw new IOException(
+                                "Cannot restore alien checkpoint.");
+                    }
+                    if(checkpoint.released) {
+                        throw new IOException(
+                                "Cannot restore released checkpoint.");
+                    }
+                    if(closed) {
+                        throw new IOException("Cannot restore closed reader.");
+                    }
+                    position = checkpoint.position;
+                    floor = position;
+                    chunk = checkpoint.chunk;
+                    line = checkpoint.line;
+                    charPositionInLine = checkpoint.charPositionInLine;
+                    if(checkpoint.pushback != null) {
+                        if(pushbackBuffer == null) {
+                            pushbackBuffer = new Pushback(checkpoint.pushback);
+                        } else {
+                            pushbackBuffer.clear();
+                            pushbackBuffer.push(checkpoint.pushback);
+                        }
+                    } else if(pushbackBuffer != null) {
+                        pushbackBuffer.clear();
+                    }
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public void release(final Checkpoint checkpoint) 
+                    throws IOException {
+                lockBranch();
+                try {
+                    if(checkpoint.owner != this) {
+                        throw new IOException(
+                                "Cannot release alien checkpoint.");
+                    }
+                    if(!checkpoint.released) {
+                        checkpoint.released = true;
+                        checkpoint.chunk = null;
+                        if(--checkpoints == 0) {
+                            checkpointPosition = Long.MAX_VALUE;
+                        }
                     }
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public BranchReader[] split(final int count, 
+                    final CharPredicate delimiter) throws IOException {
+                lockBranch();
+                try {
+                    return doSplit(count, delimiter, false);
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public BranchReader[] splitLines(final int count) 
+                    throws IOException {
+                lockBranch();
+                try {
+                    return doSplit(count, c -> c == '\n' || c == '\r', true);
+                } finally {
+                    unlockBranch();
                 }
             }
             
-            private void calculateLineAndColumn(final char[] cbuf, 
-                    final int off, final int len) {
-                for(int i = 0; i < len; i++) {
-                    if(cbuf[off + i] == '\n' || cbuf[off + i] == '\r') {
-                        if(Root.this.newLine == 0) {
-                            synchronized(Root.this) {
-                                if (Root.this.newLine == 0) {
-                                    Root.this.newLine = cbuf[off + i];
-                                }
+            /**
+             * Walks a thread-confined branch through the data to the region 
+             * boundaries branching the regions on the way, so they get the 
+             * line and column of their start.
+             */
+            private BranchReader[] doSplit(final int count, 
+                    final CharPredicate delimiter, final boolean lines) 
+                    throws IOException {
+                if(count <= 0) {
+                    throw new IllegalArgumentException(
+                            "Count must be positive: " + count);
+                }
+                if(closed) {
+                    throw new IOException("Cannot split closed reader.");
+                }
+                long end = dataEnd();
+                long start = position;
+                ArrayList<BranchReader> res = new ArrayList<>(count);
+                Branch walker = (Branch)doBranch(1, true)[0];
+                try {
+                    walker.materialize();
+                    walker.endPosition = endPosition;
+                    for(int i = 1; i <= count; i++) {
+                        Branch region = (Branch)walker.doBranch(1, false)[0];
+                        res.add(region);
+                        long boundary = end;
+                        if(i < count) {
+                            long target = start + (end - start) * i / count;
+                            long pushed = walker.pushbackBuffer == null ? 0 : 
+                                    walker.pushbackBuffer.length();
+                            walker.doSkip(pushed + 
+                                    Math.max(target - walker.position, 0));
+                            walker.doReadWhile(c -> !delimiter.test(c), null);
+                            if(walker.doRead() == '\r' && lines && 
+                                    walker.doPeek() == '\n') {
+                                walker.doRead();
                             }
+                            boundary = walker.position;
+                        }
+                        if(boundary >= end) {
+                            region.endPosition = endPosition;
+                            break;
+                        }
+                        region.endPosition = boundary;
+                    }
+                } finally {
+                    walker.close();
+                }
+                return res.toArray(new BranchReader[res.size()]);
+            }
+
+            /**
+             * Returns the end position of the branch's data reading the rest 
+             * of the underlying {@code Reader} if the branch is not bounded.
+             */
+            private long dataEnd() throws IOException {
+                if(endPosition >= 0) {
+                    return endPosition;
+                }
+                fill(Long.MAX_VALUE);
+                Root.this.lock.lock();
+                try {
+                    return endChunk.offset + endChunk.length;
+                } finally {
+                    Root.this.lock.unlock();
+                }
+            }
+
+            @Override
+            public Stream<String> linesParallel() throws IOException {
+                lockBranch();
+                try {
+                    if(closed) {
+                        throw new IOException("Cannot stream closed reader.");
+                    }
+                    long end = dataEnd();
+                    ArrayList<String> head = new ArrayList<>();
+                    Chunk first = chunk;
+                    long start = position;
+                    if(pushbackBuffer != null && pushbackBuffer.length() > 0) {
+                        /*
+                         * the lines starting in the pushback buffer are read 
+                         * ahead
+                         */
+                        Branch walker = (Branch)doBranch(1, true)[0];
+                        try {
+                            walker.materialize();
+                            walker.endPosition = endPosition;
+                            do {
+                                head.add(walker.readLine());
+                            } while(walker.pushbackBuffer.length() > 0);
+                            first = walker.chunk;
+                            start = walker.position;
+                        } finally {
+                            walker.close();
+                        }
+                    }
+                    return Stream.concat(head.stream(), StreamSupport.stream(
+                            new LineSpliterator(first, start, end), true))
+                            .parallel();
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public long getAbandonedCount() {
+                return abandonedCount;
+            }
+
+            @Override
+            public CursorTable cursorTable() throws IOException {
+                lockBranch();
+                try {
+                    if(closed) {
+                        throw new IOException(
+                                "Cannot create cursor table of closed reader.");
+                    }
+                    return new Cursors(this);
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public String readToken(final int length) throws IOException {
+                lockBranch();
+                try {
+                    if((pushbackBuffer == null || pushbackBuffer.length() == 0) 
+                            && !closed && length > 0 && (position < 
+                            chunk.offset + chunk.length || nextChunk())) {
+                        int from = (int)(position - chunk.offset);
+                        if(from + length <= chunk.length && (endPosition < 0 || 
+                                position + length <= endPosition)) {
+                            /*
+                             * the token is in the current chunk
+                             */
+                            calculateLineAndColumn(chunk.buffer, from, length);
+                            position += length;
+                            return tokenCache().intern(chunk.buffer, from, 
+                                    length);
+                        }
+                    }
+                    if(length == 0) {
+                        return closed ? null : "";
+                    }
+                    char[] buf = new char[length];
+                    int n = doRead(buf, 0, length);
+                    return n < 0 ? null : tokenCache().intern(buf, 0, n);
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+            @Override
+            public String readWhileInterned(final CharPredicate predicate) 
+                    throws IOException {
+                lockBranch();
+                try {
+                    if((pushbackBuffer == null || pushbackBuffer.length() == 0) 
+                            && !closed && (position < chunk.offset + 
+                            chunk.length || nextChunk())) {
+                        char[] buffer = chunk.buffer;
+                        int from = (int)(position - chunk.offset);
+                        int to = chunk.length;
+                        if(endPosition >= 0) {
+                            to = (int)Math.min(to, endPosition - chunk.offset);
                         }
-                        if(cbuf[off + i] == Root.this.newLine) {
-                            columnsCounts.putIfAbsent(line, charPositionInLine);
-                            line++;
-                            charPositionInLine = 1;
+                        int i = from;
+                        while(i < to && predicate.test(buffer[i])) {
+                            i++;
+                        }
+                        if(i < to || endPosition >= 0 && 
+                                chunk.offset + to >= endPosition) {
+                            /*
+                             * the run ends in the current chunk
+                             */
+                            calculateLineAndColumn(buffer, from, i - from);
+                            position += i - from;
+                            return tokenCache().intern(buffer, from, i - from);
                         }
-                    } else {
-                        charPositionInLine++;
                     }
+                    StringBuilder sb = new StringBuilder();
+                    doReadWhile(predicate, sb);
+                    return tokenCache().intern(sb.toString());
+                } finally {
+                    unlockBranch();
                 }
             }
 
             @Override
-            public synchronized int read(final char[] cbuf, 
+            public int read(final char[] cbuf, 
                     final int off, final int len) throws IOException {
+                lockBranch();
+                try {
+                    return doRead(cbuf, off, len);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private int doRead(final char[] cbuf, final int off, 
+                    final int len) throws IOException {
                 int res = -1;              // returned result
                 int readCount = 0;          // cumulative count of chars copied 
                                             // from (probably) several chunks
 
-                if(!isClosed.get()) {
+                if(!closed) {
                     boolean canRead = true;
                     if(len == 0) {
                         return 0;
@@ -449,54 +2781,20 @@ abstract public class BranchReader extends Reader {
                             pushbackBuffer.getChars(0, pushbackBuffer.length(), cbuf, off);
                             readCount += pushbackBuffer.length();
                         }
-                        pushbackBuffer.delete(0, readCount);
+                        pushbackBuffer.drop(readCount);
                         calculateLineAndColumn(cbuf, off, readCount);
                     }
                     if (position + len - readCount > endChunk.offset + endChunk.length) {
-                        synchronized(Root.this) {
-                            long dataLength = endChunk.offset + endChunk.length;
-                            if (position + len - readCount > dataLength && !isSourceEnded) {
-                                /*
-                                 * Should read from the underlying {@code
-                                 * Reader}.
-                                 */
-                                int leftReadCount = (int) (position + len  - 
-                                        readCount - dataLength);
-                                int leftChunkLength = endChunk.buffer.length - 
-                                        endChunk.length;
-                                while (leftReadCount > 0) {
-                                    if (leftChunkLength == 0) {
-                                        /*
-                                         * Allocate new chunk and add it to list
-                                         */
-                                        endChunk.next = new Chunk(leftReadCount);
-                                        endChunk.next.offset = dataLength;
-                                        endChunk = endChunk.next;
-                                        leftChunkLength = endChunk.buffer.length;
-                                    }
-
-                                    int n = source.read(endChunk.buffer,
-                                            endChunk.length,
-                                            Math.min(leftReadCount,
-                                                    leftChunkLength));
-                                    if (n <= 0) {
-                                        isSourceEnded = true;
-                                        break;
-                                    }
-                                    endChunk.length += n;
-                                    leftReadCount -= n;
-                                    leftChunkLength -= n;
-                                }
-                            }
-                        }
+                        fill(position + len - readCount);
                     }
-                    while (!isClosed.get() && readCount < len) {
+                    while (!closed && readCount < len) {
                         int from;
                         int n;
                         if (position >= chunk.offset + chunk.length) {
                             canRead = false;
                             if(chunk.next != null) {        
                                 chunk = chunk.next;
+                                floor = position;
                                 canRead = true;
                             }
                         }
@@ -518,88 +2816,126 @@ abstract public class BranchReader extends Reader {
                             break;
                         }
                     }
-                    res = (readCount > 0 && !isClosed.get() ? readCount : -1);
+                    res = (readCount > 0 && !closed ? readCount : -1);
                 }
                 return res;
             }
             
             @Override
             public void close() throws IOException {
-                synchronized (Root.this) {
-                    branches.remove(id);
-                    isClosed.set(true);
-                    if (branches.isEmpty() && source != null) {
-                        source.close();
-                        source = null;
+                Root.this.lock.lock();
+                try {
+                    closed = true;
+                    /*
+                     * a handle not used yet leaves its group, which is 
+                     * unregistered with the last one
+                     */
+                    Group g = group;
+                    if(g == null) {
+                        unregister(id);
+                    } else if(g.release(this) == 0) {
+                        unregister(g.id);
                     }
+                } finally {
+                    Root.this.lock.unlock();
                 }
             }
 
             @Override
             public BranchReader[] getBranches() {
-                synchronized(Root.this) {
-                    if(branches.isEmpty()) {
-                        return new BranchReader[]{};
-                    }
-                    return branches.values().stream().toArray(BranchReader[]::new);
+                Root.this.lock.lock();
+                try {
+                    return members().toArray(BranchReader[]::new);
+                } finally {
+                    Root.this.lock.unlock();
                 }
             }
 
             @Override
             public boolean closeOthers() throws IOException {
-                synchronized(Root.this) {
+                Root.this.lock.lock();
+                try {
                     if(isClosed()) {
                         return false;
                     }
-                    ArrayList<Branch> toClose = new ArrayList<>();
-                    for(long key: branches.keySet()) {
-                        if(key != id) {
-                            toClose.add(branches.get(key));
-                        }
-                    }
+                    Branch[] toClose = members().filter(branch -> branch != this)
+                            .toArray(Branch[]::new);
                     for(Branch branch: toClose) {
                         branch.close();
                     }
+                } finally {
+                    Root.this.lock.unlock();
                 }
                 return true;
             }
 
             @Override
             public String getEncoding() {
-                synchronized(Root.this) {
+                Root.this.lock.lock();
+                try {
                     return encodingName;
+                } finally {
+                    Root.this.lock.unlock();
                 }
             }
 
             @Override
-            public synchronized void unread(char[] cbuf, int off, int len) throws IOException {
+            public void unread(char[] cbuf, int off, int len) throws IOException {
+                lockBranch();
+                try {
+                    doUnread(cbuf, off, len);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private void doUnread(final char[] cbuf, final int off, 
+                    final int len) {
                 if(pushbackBuffer == null) {
-                    pushbackBuffer = new StringBuffer(chunkSize);
+                    pushbackBuffer = new Pushback(len);
                 }
-                pushbackBuffer.insert(0, cbuf, off, len);
+                pushbackBuffer.push(cbuf, off, len);
                 for(int i = len - 1; i >= 0; i--) {
                     calculateLineAndColumnPushback(cbuf[off + i]);
                 }
             }
 
             @Override
-            public synchronized void unread(int c) throws IOException {
+            public void unread(int c) throws IOException {
+                lockBranch();
+                try {
+                    doUnread(c);
+                } finally {
+                    unlockBranch();
+                }
+            }
+            
+            private void doUnread(final int c) {
                 if(pushbackBuffer == null) {
-                    pushbackBuffer = new StringBuffer(chunkSize);
+                    pushbackBuffer = new Pushback(16);
                 }
-                pushbackBuffer.insert(0, (char)c);
+                pushbackBuffer.push((char)c);
                 calculateLineAndColumnPushback((char)c);
             }
 
             @Override
-            public synchronized int getLine() {
-                return line;
+            public int getLine() {
+                lockBranch();
+                try {
+                    return line;
+                } finally {
+                    unlockBranch();
+                }
             }
 
             @Override
-            public synchronized int getCharPositionInLine() {
-                return charPositionInLine;
-                        
+            public int getCharPositionInLine() {
+                lockBranch();
+                try {
+                    return charPositionInLine;
+                } finally {
+                    unlockBranch();
+                }
             }
 
             @Override
@@ -611,24 +2947,621 @@ abstract public class BranchReader extends Reader {
                 if(other.isClosed()) {
                     throw new IOException("Cannot trim by closed branch.");
                 }
-                synchronized(Root.this) {
-                    if(!branches.containsKey(((Branch)other).id) || 
-                            branches.get(((Branch)other).id) != other) {
-                        throw new IOException("Cannot trim by alien branch.");
+                ((Branch)other).lockBranch();
+                try {
+                    Root.this.lock.lock();
+                    try {
+                        if(!branches.containsKey(((Branch)other).id) || 
+                                branches.get(((Branch)other).id).get() != other) {
+                            throw new IOException(
+                                    "Cannot trim by alien branch.");
+                        }
+                    } finally {
+                        Root.this.lock.unlock();
                     }
-                }
-                synchronized(other) {
                     newEndPosition = ((Branch)other).position;
+                } finally {
+                    ((Branch)other).unlockBranch();
                 }
-                synchronized(this) {
+                lockBranch();
+                try {
                     if(position > newEndPosition) {
                         throw new IOException("Cannot trim to position: " + 
                                 newEndPosition + ", has: " + position);
                     }
                     endPosition = newEndPosition;
+                } finally {
+                    unlockBranch();
+                }
+            }
+
+        }
+        
+        /**
+         * The class {@code ConfinedBranch} is a thread-confined 
+         * {@code Branch}: it is read by one thread at a time, so its own state 
+         * is accessed without taking the branch's lock.
+         */
+        private class ConfinedBranch extends Branch {
+
+            /**
+             * Creates a thread-confined handle of the group
+             * 
+             * @param group     the group of the branches created together
+             * @param id        the id of the new branch
+             */
+            private ConfinedBranch(final Group group, final long id) {
+                super(group, id);
+            }
+
+            @Override
+            public boolean isThreadConfined() {
+                return true;
+            }
+
+            @Override
+            void lockBranch() {
+                materialize();
+            }
+
+            @Override
+            void unlockBranch() {
+            }
+            
+        }
+        
+        /**
+         * The class {@code Cursors} is a concrete implementation of the 
+         * abstract {@code CursorTable}. The pushback buffers of all cursors 
+         * are segments of one arena holding the characters in the reverse 
+         * order, so unread pushes and read pops at the segment's end. The 
+         * arena is appended only, so the segments shared by forked cursors 
+         * never change and a cursor pushes in place if its segment ends at 
+         * the arena's end only.
+         */
+        private class Cursors extends CursorTable {
+            
+            /**
+             * The id the table is registered with keeping the tree open while 
+             * the table is.
+             */
+            private final long id;
+            /**
+             * Is the table closed.
+             */
+            private volatile boolean closed = false;
+            /**
+             * The end position of the cursors if the branch the table is 
+             * created of was trimmed.
+             */
+            private final long endPosition;
+            /**
+             * The positions of the cursors.
+             */
+            private long[] positions;
+            /**
+             * The chunks being read by the cursors.
+             */
+            private Chunk[] chunks;
+            /**
+             * The lines of the cursors.
+             */
+            private int[] lines;
+            /**
+             * The columns of the cursors.
+             */
+            private int[] columns;
+            /**
+             * The starts of the cursors' pushback segments.
+             */
+            private int[] pushbackStarts;
+            /**
+             * The lengths of the cursors' pushback segments.
+             */
+            private int[] pushbackLengths;
+            /**
+             * The closed flags of the cursors.
+             */
+            private boolean[] closedCursors;
+            /**
+             * The pushback segments.
+             */
+            private char[] arena = new char[16];
+            /**
+             * The used length of the arena.
+             */
+            private int arenaLength = 0;
+            /**
+             * The indices of the closed cursors to reuse.
+             */
+            private int[] free;
+            /**
+             * The number of the indices to reuse.
+             */
+            private int freeCount = 0;
+            /**
+             * The number of used indices.
+             */
+            private int count = 0;
+
+            /**
+             * Creates the table with the cursor 0 at the branch's state.
+             * 
+             * @param parent the branch
+             */
+            private Cursors(final Branch parent) throws IOException {
+                endPosition = parent.endPosition;
+                id = idGenerator.incrementAndGet();
+                lock.lock();
+                try {
+                    register(this, id);
+                } finally {
+                    lock.unlock();
+                }
+                int capacity = 16;
+                positions = new long[capacity];
+                chunks = new Chunk[capacity];
+                lines = new int[capacity];
+                columns = new int[capacity];
+                pushbackStarts = new int[capacity];
+                pushbackLengths = new int[capacity];
+                closedCursors = new boolean[capacity];
+                free = new int[capacity];
+                int cursor = allocate();
+                positions[cursor] = parent.position;
+                chunks[cursor] = parent.chunk;
+                lines[cursor] = parent.line;
+                columns[cursor] = parent.charPositionInLine;
+                if(parent.pushbackBuffer != null) {
+                    for(int i = parent.pushbackBuffer.length() - 1; i >= 0; 
+                            i--) {
+                        push(cursor, parent.pushbackBuffer.charAt(i));
+                    }
+                }
+            }
+
+            @Override
+            public int size() {
+                return count - freeCount;
+            }
+
+            @Override
+            public int fork(final int cursor) throws IOException {
+                check(cursor);
+                int res = allocate();
+                positions[res] = positions[cursor];
+                chunks[res] = chunks[cursor];
+                lines[res] = lines[cursor];
+                columns[res] = columns[cursor];
+                pushbackStarts[res] = pushbackStarts[cursor];
+                pushbackLengths[res] = pushbackLengths[cursor];
+                return res;
+            }
+
+            @Override
+            public int read(final int cursor) throws IOException {
+                int c = peek(cursor);
+                if(c >= 0) {
+                    if(pushbackLengths[cursor] > 0) {
+                        pushbackLengths[cursor]--;
+                    } else {
+                        positions[cursor]++;
+                    }
+                    if(c == '\n' || c == '\r') {
+                        if(newLine == 0) {
+                            lock.lock();
+                            try {
+                                if (newLine == 0) {
+                                    newLine = (char)c;
+                                }
+                            } finally {
+                                lock.unlock();
+                            }
+                        }
+                        if(c == newLine) {
+                            columnsCounts.putIfAbsent(lines[cursor], 
+                                    columns[cursor]);
+                            lines[cursor]++;
+                            columns[cursor] = 1;
+                        }
+                    } else {
+                        columns[cursor]++;
+                    }
+                }
+                return c;
+            }
+
+            @Override
+            public int peek(final int cursor) throws IOException {
+                if(isClosed(cursor)) {
+                    return -1;
+                }
+                if(pushbackLengths[cursor] > 0) {
+                    return arena[pushbackStarts[cursor] + 
+                            pushbackLengths[cursor] - 1];
+                }
+                long position = positions[cursor];
+                if(endPosition >= 0 && position >= endPosition) {
+                    return -1;
+                }
+                if (position >= endChunk.offset + endChunk.length) {
+                    fill(position + 1);
+                }
+                Chunk chunk = chunks[cursor];
+                while (position >= chunk.offset + chunk.length) {
+                    if (chunk.next == null) {
+                        return -1;
+                    }
+                    chunk = chunk.next;
                 }
+                chunks[cursor] = chunk;
+                return chunk.buffer[(int)(position - chunk.offset)];
             }
 
+            @Override
+            public void unread(final int cursor, final char c) 
+                    throws IOException {
+                check(cursor);
+                push(cursor, c);
+                if(c == '\n' || c == '\r') {
+                    if(c == newLine) {
+                        lines[cursor]--;
+                        columns[cursor] = columnsCounts.get(lines[cursor]);
+                    }
+                } else if(columns[cursor] > 1) {
+                    columns[cursor]--;
+                }
+            }
+
+            @Override
+            public long getPosition(final int cursor) {
+                return positions[cursor] - pushbackLengths[cursor];
+            }
+
+            @Override
+            public int getLine(final int cursor) {
+                return lines[cursor];
+            }
+
+            @Override
+            public int getCharPositionInLine(final int cursor) {
+                return columns[cursor];
+            }
+
+            @Override
+            public boolean isClosed(final int cursor) {
+                return cursor < 0 || cursor >= count || closedCursors[cursor] || 
+                        closed;
+            }
+
+            @Override
+            public void close(final int cursor) {
+                if(cursor >= 0 && cursor < count && !closedCursors[cursor]) {
+                    closedCursors[cursor] = true;
+                    chunks[cursor] = null;
+                    pushbackLengths[cursor] = 0;
+                    free[freeCount++] = cursor;
+                }
+            }
+
+            @Override
+            public BranchReader expose(final int cursor) throws IOException {
+                check(cursor);
+                Branch res = new Branch(idGenerator.incrementAndGet());
+                res.position = positions[cursor];
+                res.floor = res.position;
+                res.chunk = chunks[cursor];
+                res.line = lines[cursor];
+                res.charPositionInLine = columns[cursor];
+                res.endPosition = endPosition;
+                if(pushbackLengths[cursor] > 0) {
+                    res.pushbackBuffer = new Pushback(arena, 
+                            pushbackStarts[cursor], pushbackLengths[cursor]);
+                }
+                lock.lock();
+                try {
+                    if(closed) {
+                        throw new IOException("Cannot expose closed cursor.");
+                    }
+                    register(res, res.id);
+                } finally {
+                    lock.unlock();
+                }
+                return res;
+            }
+
+            @Override
+            public void close() throws IOException {
+                for(int i = 0; i < count; i++) {
+                    close(i);
+                }
+                lock.lock();
+                try {
+                    closed = true;
+                    unregister(id);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            
+            /**
+             * Throws if the cursor is closed.
+             */
+            private void check(final int cursor) throws IOException {
+                if(isClosed(cursor)) {
+                    throw new IOException("Cannot use closed cursor: " + 
+                            cursor);
+                }
+            }
+            
+            /**
+             * Returns a reused or new index growing the arrays if needed.
+             */
+            private int allocate() {
+                int res;
+                if(freeCount > 0) {
+                    res = free[--freeCount];
+                } else {
+                    if(count == positions.length) {
+                        int capacity = count * 2;
+                        positions = Arrays.copyOf(positions, capacity);
+                        chunks = Arrays.copyOf(chunks, capacity);
+                        lines = Arrays.copyOf(lines, capacity);
+                        columns = Arrays.copyOf(columns, capacity);
+                        pushbackStarts = Arrays.copyOf(pushbackStarts, 
+                                capacity);
+                        pushbackLengths = Arrays.copyOf(pushbackLengths, 
+                                capacity);
+                        closedCursors = Arrays.copyOf(closedCursors, capacity);
+                        free = Arrays.copyOf(free, capacity);
+                    }
+                    res = count++;
+                }
+                closedCursors[res] = false;
+                pushbackLengths[res] = 0;
+                return res;
+            }
+            
+            /**
+             * Pushes the character to the cursor's pushback segment moving it 
+             * to the arena's end if it is not there.
+             */
+            private void push(final int cursor, final char c) {
+                if(arenaLength + pushbackLengths[cursor] + 1 > arena.length) {
+                    compact(pushbackLengths[cursor] + 1);
+                }
+                int start = pushbackStarts[cursor];
+                int length = pushbackLengths[cursor];
+                if(length == 0 || start + length != arenaLength) {
+                    System.arraycopy(arena, start, arena, arenaLength, length);
+                    pushbackStarts[cursor] = arenaLength;
+                    arenaLength += length;
+                }
+                arena[arenaLength++] = c;
+                pushbackLengths[cursor] = length + 1;
+            }
+            
+            /**
+             * Copies the live pushback segments to a new arena having room 
+             * for {@code extra} more characters.
+             */
+            private void compact(final int extra) {
+                int live = 0;
+                for(int i = 0; i < count; i++) {
+                    live += pushbackLengths[i];
+                }
+                char[] old = arena;
+                arena = new char[Math.max(16, (live + extra) * 2)];
+                arenaLength = 0;
+                for(int i = 0; i < count; i++) {
+                    int length = pushbackLengths[i];
+                    if(length > 0) {
+                        System.arraycopy(old, pushbackStarts[i], arena, 
+                                arenaLength, length);
+                        pushbackStarts[i] = arenaLength;
+                        arenaLength += length;
+                    }
+                }
+            }
+            
+        }
+        
+        /**
+         * Reads the underlying {@code Reader} until the data covers the 
+         * {@code upTo} position or the {@code Reader} ends. Every call to the 
+         * underlying {@code Reader} asks for the whole free room of the end 
+         * chunk and new chunks are always allocated of {@code chunkSize}, so 
+         * even a consumer reading char by char takes the lock and calls the 
+         * {@code Reader} once per chunk only.
+         * 
+         * @param upTo the position the read data should reach
+         * @throws IOException underlying IOException
+         */
+        private void fill(final long upTo) throws IOException {
+            lock.lock();
+            try {
+                long dataLength = endChunk.offset + endChunk.length;
+                while (upTo > dataLength && !isSourceEnded) {
+                    if (endChunk.length == endChunk.buffer.length) {
+                        /*
+                         * Allocate new chunk and add it to list
+                         */
+                        Chunk chunk = new Chunk(chunkSize);
+                        chunk.offset = dataLength;
+                        endChunk.next = chunk;
+                        endChunk = chunk;
+                    }
+                    int n = source.read(endChunk.buffer, endChunk.length, 
+                            endChunk.buffer.length - endChunk.length);
+                    if (n <= 0) {
+                        isSourceEnded = true;
+                        break;
+                    }
+                    endChunk.length += n;
+                    dataLength += n;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Registers the new branch or cursor table removing the abandoned 
+         * ones first. Must be called holding the lock.
+         * 
+         * @param member the new branch, group or cursor table
+         * @param id the id of the member
+         * @return the reference the member is registered with
+         * @throws IOException underlying IOException
+         */
+        private BranchRef register(final Object member, final long id) 
+                throws IOException {
+            expunge();
+            BranchRef res = new BranchRef(member, id, abandoned);
+            branches.put(id, res);
+            return res;
+        }
+        
+        /**
+         * Returns the registered branches and the handles not used yet. Must 
+         * be called holding the lock.
+         * 
+         * @return the stream of the branches
+         */
+        private Stream<Branch> members() {
+            return branches.values().stream().map(BranchRef::get)
+                    .flatMap(member -> member instanceof Group ? 
+                            Arrays.stream(((Group)member).handles) : 
+                            Stream.of(member))
+                    .filter(member -> member instanceof Branch)
+                    .map(member -> (Branch)member);
+        }
+        
+        /**
+         * Removes the closed branch or cursor table from the list and closes 
+         * the underlying {@code Reader} if there is nothing left. Must be 
+         * called holding the lock.
+         * 
+         * @param id the id of the member
+         * @throws IOException underlying IOException
+         */
+        private void unregister(final long id) throws IOException {
+            branches.remove(id);
+            expunge();
+            if (branches.isEmpty() && source != null) {
+                source.close();
+                source = null;
+            }
+        }
+        
+        /**
+         * Removes the branches lost without closing from the list and closes 
+         * the underlying {@code Reader} if there are no branches left. Must be 
+         * called holding the lock.
+         * 
+         * @throws IOException underlying IOException
+         */
+        private void expunge() throws IOException {
+            boolean removed = false;
+            BranchRef ref;
+            while((ref = (BranchRef)abandoned.poll()) != null) {
+                if(branches.get(ref.id) == ref) {
+                    branches.remove(ref.id);
+                    abandonedCount += ref.weight;
+                    removed = true;
+                }
+            }
+            if(removed && branches.isEmpty() && source != null) {
+                source.close();
+                source = null;
+            }
+        }
+        
+        /**
+         * Returns the token cache creating it on the first call.
+         * 
+         * @return the token cache
+         */
+        private TokenCache tokenCache() {
+            TokenCache res = tokenCache;
+            if(res == null) {
+                lock.lock();
+                try {
+                    if(tokenCache == null) {
+                        tokenCache = new TokenCache(tokenCacheSize);
+                    }
+                    res = tokenCache;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return res;
+        }
+        
+        /**
+         * Looks up the memo entry.
+         * 
+         * @param start the position the rule was applied at
+         * @param ruleId the id of the rule
+         * @return the entry or {@code null} if there is none
+         */
+        private Memo recall(final long start, final int ruleId) {
+            lock.lock();
+            try {
+                return memoTable == null ? null : memoTable.get(start, ruleId);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Puts the entry into the memo. If the memo is full, the entries 
+         * behind the slowest open branch are evicted first and if less than a 
+         * quarter of the memo is freed, the older half of the entries is 
+         * evicted, so the memo is not rebuilt on nearly every put.
+         * 
+         * @param memo the entry
+         */
+        private void memoize(final Memo memo) {
+            lock.lock();
+            try {
+                if(memoTable == null) {
+                    memoTable = new MemoTable(DEFAULT_MEMO_CAPACITY);
+                }
+                if(!memoTable.put(memo)) {
+                    memoTable.evictBefore(minPosition());
+                    if(memoTable.size() > memoTable.capacity() * 3 / 4) {
+                        memoTable.evictHalf();
+                    }
+                    memoTable.put(memo);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Returns the lowest position of the open branches. The branches are 
+         * read by other threads, so their published lower bounds are taken 
+         * instead of the positions. The cursor tables do not use the memo. 
+         * Must be called holding the lock.
+         * 
+         * @return the lowest position or {@code Long.MAX_VALUE} if there are 
+         *         no open branches
+         */
+        private long minPosition() {
+            long res = Long.MAX_VALUE;
+            for(BranchRef ref : branches.values()) {
+                Object member = ref.get();
+                if(member instanceof Branch) {
+                    Branch branch = (Branch)member;
+                    res = Math.min(res, Math.min(branch.floor, 
+                            branch.checkpointPosition));
+                } else if(member instanceof Group) {
+                    res = Math.min(res, ((Group)member).position);
+                }
+            }
+            return res;
         }
         
         /**
@@ -638,7 +3571,9 @@ abstract public class BranchReader extends Reader {
          * @param chunkSize defines size of byte chunk instead of default one.
          */
         private Root(final Reader source, final int chunkSize) {
-            this.chunkSize = chunkSize;
+            if (chunkSize > 0) {
+                this.chunkSize = chunkSize;
+            }
             this.source = source;
             init();
         }
@@ -672,9 +3607,9 @@ abstract public class BranchReader extends Reader {
          * @return the root branch
          */
         private Branch root() {
-            Branch root = new Branch(null);
+            Branch root = new Branch(idGenerator.incrementAndGet());
             root.chunk = endChunk;
-            branches.put(root.id, root);
+            branches.put(root.id, new BranchRef(root, root.id, abandoned));
             return root;
         }
     }
@@ -0,0 +1,48 @@
+/*
+ * net.leksi.io.CharPredicate
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+/**
+ * Represents a predicate of one {@code char} argument. It is the 
+ * {@code char}-consuming primitive specialization of 
+ * {@code java.util.function.Predicate} used by the scanning methods of 
+ * {@code BranchReader}.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+@FunctionalInterface
+public interface CharPredicate {
+    
+    /**
+     * Evaluates this predicate on the given {@code char}.
+     * 
+     * @param c the input {@code char}
+     * @return {@code true} if the input {@code char} matches the predicate
+     */
+    boolean test(final char c);
+    
+}
@@ -0,0 +1,258 @@
+/*
+ * net.leksi.io.CharsetDetector
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The class {@code CharsetDetector} guesses the charset of data without BOM 
+ * (Byte Order Mark) by a bounded sample of its first bytes. UTF-32 and UTF-16 
+ * are recognized by zero bytes met at one position of the units only, UTF-8 
+ * by validation of its sequences, where the ASCII bytes are skipped eight at 
+ * a time, and ASCII as UTF-8 without multibyte sequences. Neither ASCII nor 
+ * UTF-8 is sure if there are zero bytes. The data which is not valid UTF-8 
+ * is taken as ISO-8859-1 with low confidence.
+ * <p>
+ * The object has no state and may be shared by threads, e.g. 
+ * {@link #INSTANCE}.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class CharsetDetector {
+    
+    /**
+     * The shared instance.
+     */
+    public static final CharsetDetector INSTANCE = new CharsetDetector();
+    
+    /**
+     * The default number of the first bytes to test.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 0x1000;
+    
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    
+    /**
+     * The class {@code Detection} is a guessed charset with the confidence.
+     */
+    public static final class Detection {
+        
+        private final String charsetName;
+        private final int confidence;
+
+        private Detection(final String charsetName, final int confidence) {
+            this.charsetName = charsetName;
+            this.confidence = confidence;
+        }
+
+        /**
+         * Returns the charset name.
+         * @return the charset name
+         */
+        public String getCharsetName() {
+            return charsetName;
+        }
+
+        /**
+         * Returns the confidence of the guess from 0 to 100.
+         * @return the confidence
+         */
+        public int getConfidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return charsetName + " (" + confidence + "%)";
+        }
+        
+    }
+    
+    /**
+     * Guesses the charset of the bytes. At most {@link #DEFAULT_SAMPLE_SIZE} 
+     * bytes are tested.
+     * 
+     * @param data the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @return the guess or {@code null} if there are no bytes
+     */
+    public Detection detect(final byte[] data, final int off, final int len) {
+        return detect(ByteBuffer.wrap(data, off, len));
+    }
+    
+    /**
+     * Guesses the charset of the bytes. At most {@link #DEFAULT_SAMPLE_SIZE} 
+     * bytes are tested.
+     * 
+     * @param data the bytes
+     * @return the guess or {@code null} if there are no bytes
+     */
+    public Detection detect(final byte[] data) {
+        return detect(data, 0, data.length);
+    }
+    
+    /**
+     * Guesses the charset of the bytes from the position of the buffer. At 
+     * most {@link #DEFAULT_SAMPLE_SIZE} bytes are tested. The buffer's 
+     * position is not changed.
+     * 
+     * @param buffer the buffer
+     * @return the guess or {@code null} if there are no bytes
+     */
+    public Detection detect(final ByteBuffer buffer) {
+        int start = buffer.position();
+        int length = Math.min(buffer.remaining(), DEFAULT_SAMPLE_SIZE);
+        if (length == 0) {
+            return null;
+        }
+        int[] zeros = new int[4];
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) == 0) {
+                zeros[i & 3]++;
+            }
+        }
+        int total = zeros[0] + zeros[1] + zeros[2] + zeros[3];
+        Detection res = total == 0 ? null : detectWide(zeros, length);
+        if (res == null) {
+            res = detectUtf8(buffer, start, length, total > 0);
+        }
+        return res;
+    }
+    
+    /**
+     * Guesses UTF-32 and UTF-16 by the positions of zero bytes counted by 
+     * the positions in the quads.
+     */
+    private Detection detectWide(final int[] zeros, final int length) {
+        int quads = length / 4;
+        if (quads > 0) {
+            /*
+             * the code points are less than 0x10000 mostly, so the two 
+             * highest bytes of every quad are zero
+             */
+            if (zeros[2] >= quads && zeros[3] >= quads && zeros[0] < quads) {
+                return new Detection("UTF-32LE", 
+                        confidence(quads - zeros[0], zeros[0], quads));
+            }
+            if (zeros[0] >= quads && zeros[1] >= quads && zeros[3] < quads) {
+                return new Detection("UTF-32BE", 
+                        confidence(quads - zeros[3], zeros[3], quads));
+            }
+        }
+        int pairs = length / 2;
+        int even = zeros[0] + zeros[2];
+        int odd = zeros[1] + zeros[3];
+        /*
+         * the zero bytes are the highest bytes of the Latin chars, spaces, 
+         * digits and punctuation, so they are met at one position of the 
+         * pairs only, however few of them a non-Latin text has
+         */
+        if (pairs == 0) {
+            return null;
+        }
+        if (odd >= 2 && odd * 100 >= pairs && even * 10 < odd) {
+            return new Detection("UTF-16LE", confidence(odd, even, pairs));
+        }
+        if (even >= 2 && even * 100 >= pairs && odd * 10 < even) {
+            return new Detection("UTF-16BE", confidence(even, odd, pairs));
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the confidence as the share of the units matching the pattern 
+     * less the share of the ones breaking it, but not less than 50 as the 
+     * pattern is recognized.
+     */
+    private int confidence(final int matching, final int breaking, 
+            final int units) {
+        return Math.max(50, 100 * (matching - breaking) / units);
+    }
+    
+    /**
+     * Validates UTF-8 skipping the ASCII bytes eight at a time. The 
+     * confidence is at most 50 if there are zero bytes, which are valid but 
+     * hardly met in text.
+     */
+    private Detection detectUtf8(final ByteBuffer buffer, final int start, 
+            final int length, final boolean zeros) {
+        int end = start + length;
+        int i = start;
+        int sequences = 0;
+        while (i < end) {
+            if (i + 8 <= end && (buffer.getLong(i) & HIGH_BITS) == 0) {
+                i += 8;
+                continue;
+            }
+            int b = buffer.get(i) & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int n;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                n = 1;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                n = 2;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                n = 3;
+                min = 0x10000;
+            } else {
+                return new Detection("ISO-8859-1", 30);
+            }
+            int cp = b & (0x3F >> n);
+            int j = 1;
+            while (j <= n && i + j < end) {
+                int c = buffer.get(i + j) & 0xFF;
+                if ((c & 0xC0) != 0x80) {
+                    return new Detection("ISO-8859-1", 30);
+                }
+                cp = cp << 6 | c & 0x3F;
+                j++;
+            }
+            if (j > n && (cp < min || cp > 0x10FFFF || 
+                    cp >= 0xD800 && cp <= 0xDFFF)) {
+                return new Detection("ISO-8859-1", 30);
+            }
+            /*
+             * a sequence cut by the end of the sample is taken as valid
+             */
+            sequences++;
+            i += j;
+        }
+        int limit = zeros ? 50 : 100;
+        if (sequences == 0) {
+            return new Detection("US-ASCII", limit);
+        }
+        return new Detection("UTF-8", Math.min(limit, 60 + 10 * sequences));
+    }
+    
+}
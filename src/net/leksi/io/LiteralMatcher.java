@@ -0,0 +1,209 @@
+/*
+ * net.leksi.io.LiteralMatcher
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The class {@code LiteralMatcher} tests a set of literals against the data 
+ * of a {@code BranchReader} at its current position in one pass. It may 
+ * replace a branch per literal when the choice items of a grammar are 
+ * keywords.
+ * <p>
+ * The literals are compiled into a trie kept in primitive arrays. The trie is 
+ * walked over the chars returned by {@link BranchReader#peek(int)}, that is 
+ * directly over the chunks of the {@code BranchReader}. The matcher has no 
+ * mutable state, so one instance may be shared by threads.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class LiteralMatcher {
+    
+    /**
+     * The literals in the order given.
+     */
+    private final String[] literals;
+    /**
+     * The length of the longest literal.
+     */
+    private final int maxLength;
+    /**
+     * The sorted labels of the transitions of each trie node.
+     */
+    private final char[][] labels;
+    /**
+     * The target nodes of the transitions of each trie node, parallel to 
+     * {@code labels}.
+     */
+    private final int[][] targets;
+    /**
+     * The index of the literal ending at each trie node or -1.
+     */
+    private final int[] ends;
+
+    /**
+     * Creates {@code LiteralMatcher} object for the given literals. If a 
+     * literal occurs several times, the first occurrence's index is reported.
+     * 
+     * @param literals the literals to match
+     * @throws IllegalArgumentException if a literal is {@code null} or empty
+     */
+    public LiteralMatcher(final String... literals) {
+        int numNodes = 1;
+        int longest = 0;
+        for(String literal: literals) {
+            if(literal == null || literal.isEmpty()) {
+                throw new IllegalArgumentException("Literal cannot be empty.");
+            }
+            numNodes += literal.length();
+            longest = Math.max(longest, literal.length());
+        }
+        this.literals = literals.clone();
+        maxLength = longest;
+        char[][] nodeLabels = new char[numNodes][0];
+        int[][] nodeTargets = new int[numNodes][0];
+        int[] nodeEnds = new int[numNodes];
+        Arrays.fill(nodeEnds, -1);
+        numNodes = 1;
+        for(int i = 0; i < literals.length; i++) {
+            int node = 0;
+            for(int j = 0; j < literals[i].length(); j++) {
+                char c = literals[i].charAt(j);
+                int k = Arrays.binarySearch(nodeLabels[node], c);
+                if(k < 0) {
+                    /*
+                     * insert the transition keeping the labels sorted
+                     */
+                    k = -k - 1;
+                    nodeLabels[node] = insert(nodeLabels[node], k, c);
+                    nodeTargets[node] = insert(nodeTargets[node], k, numNodes++);
+                }
+                node = nodeTargets[node][k];
+            }
+            if(nodeEnds[node] == -1) {
+                nodeEnds[node] = i;
+            }
+        }
+        labels = Arrays.copyOf(nodeLabels, numNodes);
+        targets = Arrays.copyOf(nodeTargets, numNodes);
+        ends = Arrays.copyOf(nodeEnds, numNodes);
+    }
+    
+    private static char[] insert(final char[] array, final int index, 
+            final char value) {
+        char[] res = new char[array.length + 1];
+        System.arraycopy(array, 0, res, 0, index);
+        res[index] = value;
+        System.arraycopy(array, index, res, index + 1, array.length - index);
+        return res;
+    }
+    
+    private static int[] insert(final int[] array, final int index, 
+            final int value) {
+        int[] res = new int[array.length + 1];
+        System.arraycopy(array, 0, res, 0, index);
+        res[index] = value;
+        System.arraycopy(array, index, res, index + 1, array.length - index);
+        return res;
+    }
+    
+    /**
+     * Returns the number of literals.
+     * @return the number of literals
+     */
+    public int size() {
+        return literals.length;
+    }
+    
+    /**
+     * Returns the literal of the given index.
+     * @param index the index of the literal as it was given
+     * @return the literal
+     */
+    public String getLiteral(final int index) {
+        return literals[index];
+    }
+    
+    /**
+     * Returns indices of all literals the data of the {@code reader} starts 
+     * with, in the order of their length. The {@code reader} is not moved.
+     * 
+     * @param reader {@code BranchReader} to test
+     * @return indices of the matching literals, empty if there are none
+     * @throws IOException underlying IOException
+     */
+    public int[] matchAll(final BranchReader reader) throws IOException {
+        int[] res = new int[maxLength];
+        int count = 0;
+        CharSequence ahead = reader.peek(maxLength);
+        int node = 0;
+        for(int i = 0; i < ahead.length(); i++) {
+            int k = Arrays.binarySearch(labels[node], ahead.charAt(i));
+            if(k < 0) {
+                break;
+            }
+            node = targets[node][k];
+            if(ends[node] >= 0) {
+                res[count++] = ends[node];
+            }
+        }
+        return Arrays.copyOf(res, count);
+    }
+    
+    /**
+     * Returns the index of the longest literal the data of the {@code reader} 
+     * starts with and, if {@code consume} is {@code true}, moves the 
+     * {@code reader} past it.
+     * 
+     * @param reader {@code BranchReader} to test
+     * @param consume the flag signaling whether to skip the matched literal
+     * @return index of the longest matching literal or -1 if there is none
+     * @throws IOException underlying IOException
+     */
+    public int matchLongest(final BranchReader reader, final boolean consume) 
+            throws IOException {
+        int res = -1;
+        CharSequence ahead = reader.peek(maxLength);
+        int node = 0;
+        for(int i = 0; i < ahead.length(); i++) {
+            int k = Arrays.binarySearch(labels[node], ahead.charAt(i));
+            if(k < 0) {
+                break;
+            }
+            node = targets[node][k];
+            if(ends[node] >= 0) {
+                res = ends[node];
+            }
+        }
+        if(res >= 0 && consume) {
+            reader.skip(literals[res].length());
+        }
+        return res;
+    }
+    
+}
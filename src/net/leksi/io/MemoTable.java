@@ -0,0 +1,186 @@
+/*
+ * net.leksi.io.MemoTable
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.util.Arrays;
+
+/**
+ * The class {@code MemoTable} holds the results of the rules applied at the 
+ * positions of the data for packrat parsing. The entries are looked up by the 
+ * pair of the position and the rule id in an open addressing table, so a 
+ * lookup allocates nothing.
+ * <p>
+ * The table is not thread-safe, the owner guards it.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+class MemoTable {
+    
+    /**
+     * The slots of the table, twice as many as the entries it may hold.
+     */
+    private BranchReader.Memo[] slots;
+    /**
+     * The mask to get a slot by a hash.
+     */
+    private final int mask;
+    /**
+     * The maximal number of entries.
+     */
+    private final int capacity;
+    /**
+     * The number of entries.
+     */
+    private int size = 0;
+
+    /**
+     * Creates {@code MemoTable} object of at least {@code capacity} entries.
+     * @param capacity the maximal number of entries to hold
+     */
+    MemoTable(final int capacity) {
+        int numSlots = Integer.highestOneBit(Math.max(capacity, 1) * 4 - 1);
+        slots = new BranchReader.Memo[numSlots];
+        mask = numSlots - 1;
+        this.capacity = numSlots / 2;
+    }
+    
+    /**
+     * Returns the maximal number of entries.
+     * @return the capacity
+     */
+    int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns the number of entries.
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the entry of the rule applied at the position.
+     * @param start the position
+     * @param ruleId the rule id
+     * @return the entry or {@code null} if there is none
+     */
+    BranchReader.Memo get(final long start, final int ruleId) {
+        int slot = hash(start, ruleId);
+        BranchReader.Memo memo;
+        while((memo = slots[slot]) != null) {
+            if(memo.getStart() == start && memo.getRuleId() == ruleId) {
+                return memo;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+    
+    /**
+     * Puts the entry replacing the one of the same rule and position.
+     * @param memo the entry
+     * @return {@code false} if the table is full
+     */
+    boolean put(final BranchReader.Memo memo) {
+        int slot = hash(memo.getStart(), memo.getRuleId());
+        BranchReader.Memo old;
+        while((old = slots[slot]) != null) {
+            if(old.getStart() == memo.getStart() && 
+                    old.getRuleId() == memo.getRuleId()) {
+                slots[slot] = memo;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if(size == capacity) {
+            return false;
+        }
+        slots[slot] = memo;
+        size++;
+        return true;
+    }
+    
+    /**
+     * Removes the entries of the positions before the given one.
+     * @param position the position
+     */
+    void evictBefore(final long position) {
+        BranchReader.Memo[] old = slots;
+        slots = new BranchReader.Memo[old.length];
+        size = 0;
+        for(BranchReader.Memo memo : old) {
+            if(memo != null && memo.getStart() >= position) {
+                put(memo);
+            }
+        }
+    }
+    
+    /**
+     * Removes the older half of the entries, the ones of the lowest 
+     * positions. If too few entries are before the median position, the 
+     * ones of the median position are removed too, so at least a quarter of 
+     * the entries is always removed.
+     */
+    void evictHalf() {
+        if(size == 0) {
+            return;
+        }
+        long[] starts = new long[size];
+        int n = 0;
+        for(BranchReader.Memo memo : slots) {
+            if(memo != null) {
+                starts[n++] = memo.getStart();
+            }
+        }
+        Arrays.sort(starts);
+        long median = starts[n / 2];
+        int before = 0;
+        while(starts[before] < median) {
+            before++;
+        }
+        evictBefore(before < n / 4 ? median + 1 : median);
+    }
+    
+    /**
+     * Removes all the entries.
+     */
+    void clear() {
+        slots = new BranchReader.Memo[slots.length];
+        size = 0;
+    }
+    
+    /**
+     * Returns the first slot to probe for the entry.
+     */
+    private int hash(final long start, final int ruleId) {
+        long h = (start * 31 + ruleId) * 0x9E3779B97F4A7C15L;
+        return (int)(h >>> 32) & mask;
+    }
+    
+}
@@ -0,0 +1,154 @@
+/*
+ * net.leksi.io.TokenCache
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+/**
+ * The class {@code TokenCache} is a bounded cache of {@code String}s to 
+ * return the same instance for the same chars. The chars are hashed and 
+ * compared where they are, so a {@code String} is allocated on a miss only.
+ * <p>
+ * The cache is a set-associative table: a hash selects a set of 
+ * {@code WAYS} slots and a miss evicts a slot of the set with the CLOCK 
+ * algorithm. The slots are read and written without locking: a cached 
+ * {@code String} is immutable and is checked against the chars before being 
+ * returned, so a racing update can only cause an extra miss.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+class TokenCache {
+    
+    /**
+     * The number of slots in a set.
+     */
+    static final private int WAYS = 4;
+    
+    /**
+     * The cached {@code String}s.
+     */
+    private final String[] tokens;
+    /**
+     * The CLOCK reference bits of the slots.
+     */
+    private final boolean[] referenced;
+    /**
+     * The CLOCK hands of the sets.
+     */
+    private final byte[] hands;
+    /**
+     * The mask to get a set by a hash.
+     */
+    private final int mask;
+
+    /**
+     * Creates {@code TokenCache} object of at least {@code capacity} 
+     * {@code String}s.
+     * @param capacity the minimal number of {@code String}s to hold
+     */
+    TokenCache(final int capacity) {
+        int numSets = Math.max((capacity + WAYS - 1) / WAYS, 1);
+        numSets = Integer.highestOneBit(numSets * 2 - 1);
+        tokens = new String[numSets * WAYS];
+        referenced = new boolean[numSets * WAYS];
+        hands = new byte[numSets];
+        mask = numSets - 1;
+    }
+    
+    /**
+     * Returns the number of {@code String}s the cache may hold.
+     * @return the capacity
+     */
+    int capacity() {
+        return tokens.length;
+    }
+    
+    /**
+     * Returns the cached {@code String} equal to the chars, caching a new one 
+     * if there is none.
+     * @param buffer the chars
+     * @param off the offset of the first char
+     * @param len the number of chars
+     * @return the {@code String} equal to the chars
+     */
+    String intern(final char[] buffer, final int off, final int len) {
+        int hash = 0;
+        for(int i = off; i < off + len; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int set = (hash ^ hash >>> 16) & mask;
+        for(int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+            String token = tokens[slot];
+            if(token != null && token.length() == len && 
+                    token.hashCode() == hash) {
+                int i = 0;
+                while(i < len && token.charAt(i) == buffer[off + i]) {
+                    i++;
+                }
+                if(i == len) {
+                    referenced[slot] = true;
+                    return token;
+                }
+            }
+        }
+        return put(set, new String(buffer, off, len));
+    }
+    
+    /**
+     * Returns the cached {@code String} equal to the given one, caching the 
+     * given one if there is none.
+     * @param value the {@code String} to look up
+     * @return the {@code String} equal to the given one
+     */
+    String intern(final String value) {
+        int hash = value.hashCode();
+        int set = (hash ^ hash >>> 16) & mask;
+        for(int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+            String token = tokens[slot];
+            if(token != null && token.hashCode() == hash && 
+                    token.equals(value)) {
+                referenced[slot] = true;
+                return token;
+            }
+        }
+        return put(set, value);
+    }
+    
+    /**
+     * Puts the {@code String} into the set evicting the first slot the CLOCK 
+     * hand meets unreferenced.
+     */
+    private String put(final int set, final String token) {
+        int hand = hands[set];
+        while(referenced[set * WAYS + hand]) {
+            referenced[set * WAYS + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+        tokens[set * WAYS + hand] = token;
+        hands[set] = (byte)((hand + 1) % WAYS);
+        return token;
+    }
+    
+}
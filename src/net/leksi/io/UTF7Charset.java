@@ -0,0 +1,416 @@
+/*
+ * net.leksi.io.UTF7Charset
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+
+/**
+ * The class {@code UTF7Charset} is the UTF-7 charset (RFC 2152). It is 
+ * registered by {@link UTF7CharsetProvider}, so it can be got with 
+ * {@code Charset.forName("UTF-7")} and used wherever a {@code Charset} is 
+ * accepted. The decoder gives chars straight from bytes and skips the BOM 
+ * like {@link UTF7InputStream}, the encoder is the counterpart of 
+ * {@link UTF7OutputStream}.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class UTF7Charset extends Charset {
+    
+    /**
+     * The base64 codes of the ASCII symbols, -1 for not base64 alphabet 
+     * members.
+     */
+    static final byte[] BASE64 = new byte[0x80];
+    /**
+     * The base64 alphabet.
+     */
+    static final byte[] DIGITS = new byte[64];
+    /**
+     * The mark of the directly encoded symbols.
+     */
+    static final byte DIRECT = 1;
+    /**
+     * The mark of the optional direct symbols, they may be encoded either 
+     * directly or with base64.
+     */
+    static final byte OPTIONAL = 2;
+    /**
+     * The marks of the ASCII symbols, 0 if a symbol is to be encoded with 
+     * base64.
+     */
+    static final byte[] SETS = new byte[0x80];
+    
+    static {
+        Arrays.fill(BASE64, (byte)-1);
+        for(int i = 0; i < 26; i++) {
+            BASE64['A' + i] = (byte)i;
+            BASE64['a' + i] = (byte)(26 + i);
+        }
+        for(int i = 0; i < 10; i++) {
+            BASE64['0' + i] = (byte)(52 + i);
+        }
+        BASE64['+'] = 62;
+        BASE64['/'] = 63;
+        for(char ch: "'(),-./:? \t\r\n".toCharArray()) {
+            SETS[ch] = DIRECT;
+        }
+        for(int ch = 0; ch < BASE64.length; ch++) {
+            if(BASE64[ch] != -1) {
+                DIGITS[BASE64[ch]] = (byte)ch;
+                if(ch != '+') {
+                    SETS[ch] = DIRECT;
+                }
+            }
+        }
+        for(char ch: "!\"#$%&*;<=>@[]^_`{|}".toCharArray()) {
+            SETS[ch] = OPTIONAL;
+        }
+    }
+    
+    /**
+     * The only instance.
+     */
+    public static final UTF7Charset INSTANCE = new UTF7Charset();
+
+    private UTF7Charset() {
+        super("UTF-7", new String[]{"UTF7", "unicode-1-1-utf-7", 
+            "csUnicode11UTF7"});
+    }
+
+    @Override
+    public boolean contains(final Charset cs) {
+        return true;
+    }
+
+    @Override
+    public CharsetDecoder newDecoder() {
+        return new Decoder(this);
+    }
+
+    /**
+     * Returns a new encoder. The optional direct symbols are encoded 
+     * directly.
+     * @return a new encoder
+     */
+    @Override
+    public CharsetEncoder newEncoder() {
+        return new Encoder(this);
+    }
+    
+    /**
+     * The class {@code Decoder} is a {@code CharsetDecoder} of UTF-7.
+     */
+    private static final class Decoder extends CharsetDecoder {
+        
+        /**
+         * The state out of base64 chunk.
+         */
+        private static final int DIRECT = 0;
+        /**
+         * The state just after '+'.
+         */
+        private static final int SHIFT = 1;
+        /**
+         * The state in base64 chunk.
+         */
+        private static final int ENCODED = 2;
+        
+        /**
+         * The current state.
+         */
+        private int state = DIRECT;
+        /**
+         * The bits of base64 chunk not yet given as char. Only the lowest 
+         * {@code bitCount} bits matter.
+         */
+        private int bits = 0;
+        /**
+         * The number of bits of base64 chunk not yet given.
+         */
+        private int bitCount = 0;
+        /**
+         * The flag signalling if no char is given yet, so the BOM is to be 
+         * skipped.
+         */
+        private boolean atStart = true;
+
+        private Decoder(final Charset cs) {
+            super(cs, 1.0f, 1.0f);
+        }
+
+        @Override
+        protected CoderResult decodeLoop(final ByteBuffer in, 
+                final CharBuffer out) {
+            int position = in.position();
+            try {
+                while(position < in.limit()) {
+                    int b = in.get(position);
+                    if(b < 0) {
+                        return CoderResult.malformedForLength(1);
+                    }
+                    if(state == DIRECT) {
+                        if(b == '+') {
+                            state = SHIFT;
+                        } else if(out.hasRemaining()) {
+                            atStart = false;
+                            out.put((char)b);
+                        } else {
+                            return CoderResult.OVERFLOW;
+                        }
+                        position++;
+                        continue;
+                    }
+                    if(state == SHIFT) {
+                        if(b == '-') { // "+-" is '+'
+                            if(!out.hasRemaining()) {
+                                return CoderResult.OVERFLOW;
+                            }
+                            atStart = false;
+                            out.put('+');
+                            state = DIRECT;
+                            position++;
+                            continue;
+                        }
+                        state = ENCODED;
+                    }
+                    int code = BASE64[b];
+                    if(code == -1) {
+                        // leave base64 chunk, omit '-' or give other
+                        boolean valid = (bits & (1 << bitCount) - 1) == 0;
+                        state = DIRECT;
+                        bits = 0;
+                        bitCount = 0;
+                        if(!valid) {
+                            return CoderResult.malformedForLength(1);
+                        }
+                        if(b == '-') {
+                            position++;
+                        }
+                        continue;
+                    }
+                    int leftCount = bitCount >= 10 ? bitCount - 10 : 
+                            bitCount + 6;
+                    if(position + 1 == in.limit() && 
+                            ((bits << 6 | code) & (1 << leftCount) - 1) != 0) {
+                        /*
+                         * the bits left would be malformed if the input 
+                         * ended here, so the last byte waits for more input 
+                         * and is reported if there is none
+                         */
+                        return CoderResult.UNDERFLOW;
+                    }
+                    if(bitCount >= 10) {
+                        if(!out.hasRemaining()) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        bitCount -= 10;
+                        char c = (char)(bits << 6 - bitCount | 
+                                code >>> bitCount);
+                        if(!atStart || c != 0xFEFF) {
+                            out.put(c);
+                        }
+                        atStart = false;
+                    } else {
+                        bitCount += 6;
+                    }
+                    bits = bits << 6 | code;
+                    position++;
+                }
+                return CoderResult.UNDERFLOW;
+            } finally {
+                in.position(position);
+            }
+        }
+
+        @Override
+        protected void implReset() {
+            state = DIRECT;
+            bits = 0;
+            bitCount = 0;
+            atStart = true;
+        }
+        
+    }
+    
+    /**
+     * The class {@code Encoder} is a {@code CharsetEncoder} of UTF-7.
+     */
+    private static final class Encoder extends CharsetEncoder {
+        
+        /**
+         * The flag signalling if the current position of the output is in
+         * base64 chunk.
+         */
+        private boolean inBase64 = false;
+        /**
+         * The bits not yet given as base64 digit. Only the lowest 
+         * {@code bitCount} bits matter.
+         */
+        private int bits = 0;
+        /**
+         * The number of bits not yet given.
+         */
+        private int bitCount = 0;
+
+        private Encoder(final Charset cs) {
+            super(cs, 1.5f, 7.0f);
+        }
+
+        @Override
+        public boolean canEncode(final char c) {
+            return !Character.isSurrogate(c);
+        }
+
+        @Override
+        protected CoderResult encodeLoop(final CharBuffer in, 
+                final ByteBuffer out) {
+            int position = in.position();
+            try {
+                while(position < in.limit()) {
+                    char c = in.get(position);
+                    if(c < 0x80 && SETS[c] != 0) {
+                        // '-' and the last digit to leave base64 chunk
+                        if(out.remaining() < (inBase64 ? 3 : 1)) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        if(inBase64) {
+                            leaveBase64(out, BASE64[c] != -1 || c == '-');
+                        }
+                        out.put((byte)c);
+                        position++;
+                    } else if(c == '+' && !inBase64) {
+                        if(out.remaining() < 2) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        out.put((byte)'+').put((byte)'-');
+                        position++;
+                    } else {
+                        int count = 1;
+                        if(Character.isHighSurrogate(c)) {
+                            if(position + 1 == in.limit()) {
+                                /*
+                                 * it turns malformed if the input ends
+                                 */
+                                return leaveBeforeMalformed(out, 
+                                        CoderResult.UNDERFLOW);
+                            }
+                            if(!Character.isLowSurrogate(
+                                    in.get(position + 1))) {
+                                return leaveBeforeMalformed(out, 
+                                        CoderResult.malformedForLength(1));
+                            }
+                            count = 2;
+                        } else if(Character.isLowSurrogate(c)) {
+                            return leaveBeforeMalformed(out, 
+                                    CoderResult.malformedForLength(1));
+                        }
+                        // '+' and up to 3 digits per char
+                        if(out.remaining() < (inBase64 ? 0 : 1) + 3 * count) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        if(!inBase64) {
+                            out.put((byte)'+');
+                            inBase64 = true;
+                        }
+                        for(int i = 0; i < count; i++) {
+                            bits = bits << 16 | in.get(position++);
+                            bitCount += 16;
+                            while(bitCount >= 6) {
+                                bitCount -= 6;
+                                out.put(DIGITS[bits >>> bitCount & 0x3F]);
+                            }
+                        }
+                    }
+                }
+                return CoderResult.UNDERFLOW;
+            } finally {
+                in.position(position);
+            }
+        }
+        
+        /**
+         * Leaves base64 chunk before the malformed char, so its replacement 
+         * is written in direct mode.
+         * @param out the output
+         * @param result the result to return if there is room to leave
+         * @return the result or {@code CoderResult.OVERFLOW}
+         */
+        private CoderResult leaveBeforeMalformed(final ByteBuffer out, 
+                final CoderResult result) {
+            if(inBase64) {
+                if(out.remaining() < 2) {
+                    return CoderResult.OVERFLOW;
+                }
+                leaveBase64(out, true);
+            }
+            return result;
+        }
+        
+        /**
+         * Leaves base64 chunk giving the rest of bits.
+         * @param out the output
+         * @param minus if the '-' is to be given
+         */
+        private void leaveBase64(final ByteBuffer out, final boolean minus) {
+            if(bitCount > 0) {
+                out.put(DIGITS[bits << 6 - bitCount & 0x3F]);
+            }
+            if(minus) {
+                out.put((byte)'-');
+            }
+            inBase64 = false;
+            bits = 0;
+            bitCount = 0;
+        }
+
+        @Override
+        protected CoderResult implFlush(final ByteBuffer out) {
+            if(inBase64) {
+                if(out.remaining() < 2) {
+                    return CoderResult.OVERFLOW;
+                }
+                leaveBase64(out, true);
+            }
+            return CoderResult.UNDERFLOW;
+        }
+
+        @Override
+        protected void implReset() {
+            inBase64 = false;
+            bits = 0;
+            bitCount = 0;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,61 @@
+/*
+ * net.leksi.io.UTF7CharsetProvider
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.nio.charset.Charset;
+import java.nio.charset.spi.CharsetProvider;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * The class {@code UTF7CharsetProvider} registers {@link UTF7Charset} with 
+ * {@code Charset}.
+ *
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class UTF7CharsetProvider extends CharsetProvider {
+
+    @Override
+    public Iterator<Charset> charsets() {
+        return Collections.<Charset>singletonList(UTF7Charset.INSTANCE)
+                .iterator();
+    }
+
+    @Override
+    public Charset charsetForName(final String charsetName) {
+        if(UTF7Charset.INSTANCE.name().equalsIgnoreCase(charsetName)) {
+            return UTF7Charset.INSTANCE;
+        }
+        for(String alias: UTF7Charset.INSTANCE.aliases()) {
+            if(alias.equalsIgnoreCase(charsetName)) {
+                return UTF7Charset.INSTANCE;
+            }
+        }
+        return null;
+    }
+    
+}
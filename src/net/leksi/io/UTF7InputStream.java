@@ -31,53 +31,101 @@ package net.leksi.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * The class {@code UTF7InputStream} reads UTF-7 encoded data and gives it on
- * UTF-16BE encoding.
+ * UTF-16BE encoding. Chars may be read straight with {@link UTF7Charset}.
  * 
  * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
  * @since JDK1.8
  */
 public class UTF7InputStream extends InputStream {
 
+    /**
+     * The mask of the {@code ring}'s positions. A single step of decoding 
+     * gives at most two 16-bit units.
+     */
+    static final private int RING_MASK = 0x7;
+
     /**
      * The underlying {@code InputSource} object.
      */
     private InputStream source = null;
     /**
-     * The auxiliary buffer for decoding base64 chunks.
+     * The block of data read from the {@code source}.
      */
-    private final byte[] buffer = new byte[6];
+    private final byte[] block = new byte[0x1000];
     /**
-     * The cache for bytes which cannot be returned at the moment.
+     * The position of the next byte to read from the {@code block}.
      */
-    private final ArrayList<Byte> cache = new ArrayList<>();
+    private int blockPosition = 0;
     /**
-     * The position for the next reading from the {@code buffer}. If it equals 
-     * to the {@code buffer}'s length, the next data from the {@code source} 
-     * needed.
+     * The length of data in the {@code block}.
      */
-    private int tail = 0;
+    private int blockLength = 0;
     /**
-     * The flag signalling if the {@code source} ended.
+     * The ring buffer for decoded bytes which cannot be returned at the 
+     * moment.
      */
-    private boolean isSourceEnded = false;
+    private final byte[] ring = new byte[RING_MASK + 1];
     /**
-     * The length of data in the {@code buffer}.
+     * The position of the next byte to return from the {@code ring}.
      */
-    private int bufferSize = 0;
+    private int ringHead = 0;
+    /**
+     * The number of bytes in the {@code ring}.
+     */
+    private int ringSize = 0;
+    /**
+     * The flag signalling if the {@code source} ended.
+     */
+    private boolean isSourceEnded = false;
     /**
      * The flag signalling if the current position of the {@code source} is in
      * base64 chunk.
      */
     private boolean inBase64 = false;
     /**
-     * The current position of the output data.
+     * The bits of base64 chunk not yet given as 16-bit unit. Only the lowest 
+     * {@code bitCount} bits matter.
+     */
+    private int bits = 0;
+    /**
+     * The number of bits of base64 chunk not yet given.
+     */
+    private int bitCount = 0;
+    /**
+     * The flag signalling if no unit is given yet, so the BOM is to be cut.
      */
-    private long outPosition = 0;
+    private boolean atStart = true;
+
+    /**
+     * Creates {@code UTF7InputStream} object over the given {@code InputStream}.
+     * @param source the given {@code InputStream}.
+     */
+    public UTF7InputStream(final InputStream source) {
+        this.source = source;
+    }
+    
+    /**
+     * Returns the next byte of the {@code source} reading it by blocks.
+     * @return the next byte or -1 if the {@code source} ended
+     * @throws IOException re-throws stream's IOException
+     */
+    private int next() throws IOException {
+        if(blockPosition == blockLength) {
+            if(isSourceEnded) {
+                return -1;
+            }
+            blockPosition = 0;
+            blockLength = Math.max(source.read(block, 0, block.length), 0);
+            if(blockLength == 0) {
+                isSourceEnded = true;
+                return -1;
+            }
+        }
+        return (int)block[blockPosition++] & 0xFF;
+    }
     
     /**
      * Returns the base64 code of the input symbol
@@ -85,38 +133,87 @@ public class UTF7InputStream extends InputStream {
      * @return the base64 code of the input symbol or -1 if it is not a base64
      * alphabet member.
      */
-    private byte getBase64Code(final int ch) {
-        byte res = -1;
-        if(ch > 0x40 && ch < 0x5B) {
-            res = (byte)(ch - 65);
-        } else if(ch > 0x60 && ch < 0x7B) {
-            res = (byte)(ch - 71);
-        } else if(ch > 0x2F && ch < 0x3A) {
-            res = (byte)(ch + 4);
-        } else if(ch == '+') {
-            res = 62;
-        } else if(ch == '/') {
-            res = 63;
+    private static int getBase64Code(final int ch) {
+        return ch >= 0 && ch < 0x80 ? UTF7Charset.BASE64[ch] : -1;
+    }
+    
+    /**
+     * Puts the 16-bit unit to the {@code ring} cutting the BOM at the start.
+     * @param unit the unit
+     */
+    private void put(final int unit) {
+        if(atStart) {
+            atStart = false;
+            if(unit == 0xFEFF) {
+                return;
+            }
         }
-        return res;    
+        ring[ringHead + ringSize & RING_MASK] = (byte)(unit >> 8);
+        ring[ringHead + ringSize + 1 & RING_MASK] = (byte)unit;
+        ringSize += 2;
     }
-
+    
     /**
-     * Creates {@code UTF7InputStream} object over the given {@code InputStream}.
-     * @param source the given {@code InputStream}.
+     * Leaves base64 chunk checking if the extra bits are zeros.
+     * @throws IOException if the extra bits are not zeros
      */
-    public UTF7InputStream(final InputStream source) {
-        this.source = source;
+    private void leaveBase64() throws IOException {
+        inBase64 = false;
+        if((bits & (1 << bitCount) - 1) != 0) {
+            throw new IOException("Invalid code!");
+        }
+        bits = 0;
+        bitCount = 0;
     }
     
     /**
-     * The auxiliary method for not encoded symbol to expand it to 16 bits
-     * @param b not encoded symbol to expand 
-     * @return 0 as the most significant byte
+     * Decodes the {@code source} until there are bytes in the {@code ring}.
+     * @return {@code false} if the {@code source} ended and the {@code ring} 
+     *         is empty
+     * @throws IOException re-throws stream's IOException or if the code is 
+     *         invalid
      */
-    private int to16(final int b) {
-        cache.add((byte)b);
-        return 0;
+    private boolean fill() throws IOException {
+        while(ringSize == 0) {
+            int b = next();
+            if(b == -1) {
+                if(inBase64) {
+                    leaveBase64();
+                }
+                return false;
+            }
+            if(!inBase64) {
+                if(b != '+') {
+                    put(b); // not encoded symbol
+                    continue;
+                }
+                b = next();
+                if(b == '-') {
+                    put('+'); // "+-" is '+'
+                    continue;
+                }
+                inBase64 = true;
+                if(b == -1) {
+                    continue;
+                }
+            }
+            int code = getBase64Code(b);
+            if(code != -1) {
+                bits = bits << 6 | code;
+                bitCount += 6;
+                if(bitCount >= 16) {
+                    bitCount -= 16;
+                    put(bits >>> bitCount & 0xFFFF);
+                }
+            } else {
+                // got not base64 alphabet member, omit '-' or give other
+                leaveBase64();
+                if(b != '-') {
+                    put(b);
+                }
+            }
+        }
+        return true;
     }
     
     @Override
@@ -127,142 +224,59 @@ public class UTF7InputStream extends InputStream {
     
     @Override
     public int read() throws IOException {
-        int res = -1; // return value
-        boolean wasMinus = false;
-        if(tail == bufferSize) { // more data needed
-            if(!cache.isEmpty()) { // read from cahce
-                res = (int)cache.remove(0) & 0xFF;
-            } else if(!isSourceEnded) { // read the source
-                boolean plus = false; // the '+' was just read
-                bufferSize = 0; // initialize
-                tail = 0;       // buffer
-                int numSextets = 0;   // initialize number of read sextets
-                while (true) { // loop unknown times until can break
-                    int b = source.read();
-                    if (b == -1) { // the source ended, no more data 
-                                   // available
-                        isSourceEnded = true;
-                        break;
-                    }
-                    if (!inBase64) { 
-                        if (!plus && b == (int) '+') {
-                            plus = true;
-                            continue;   // as '+' just read
-                                        // see the next
-                        } else if (b == (int) '-') {
-                            if (plus) { // "+-" is '+' 
-                                res = to16((int) '+');
-                                break;
-                            }
-                            res = to16(b); // '-' itself
-                            break;
-                        } else if (!plus) {
-                            res = to16(b); // any nit encoded symbol
-                            break;
-                        }
-                        inBase64 = true;
-                    }
-                    // we are at base64 chunk until
-                    // get 8 sextets or get not base64 alphabet member
-                    byte code = getBase64Code((char) b);
-                    if (code != -1) {
-                        switch (numSextets) {
-                            case 0:
-                                Arrays.fill(buffer, (byte) 0);
-                                buffer[0] = (byte) ((int) code << 2 & 
-                                        0b11111100);
-                                break;
-                            case 1:
-                                buffer[0] |= (byte) ((int) code >> 4 & 
-                                        0b00000011);
-                                buffer[1] |= (byte) (((int) code & 
-                                        0b00001111) << 4);
-                                break;
-                            case 2:
-                                buffer[1] |= (byte) ((int) code >> 2 & 
-                                        0b00001111);
-                                buffer[2] |= (byte) ((int) code << 6 & 
-                                        0b11000000);
-                                break;
-                            case 3:
-                                buffer[2] |= (byte) ((int) code & 
-                                        0b00111111);
-                                break;
-                            case 4:
-                                buffer[3] = (byte) ((int) code << 2 & 
-                                        0b11111100);
-                                break;
-                            case 5:
-                                buffer[3] |= (byte) ((int) code >> 4 & 
-                                        0b00000011);
-                                buffer[4] |= (byte) (((int) code & 
-                                        0b00001111) << 4);
-                                break;
-                            case 6:
-                                buffer[4] |= (byte) ((int) code >> 2 & 
-                                        0b00001111);
-                                buffer[5] |= (byte) ((int) code << 6 & 
-                                        0b11000000);
-                                break;
-                            default:
-                                buffer[5] |= (byte) ((int) code & 
-                                        0b00111111);
-                                break;
-                        }
-                        numSextets++;
-                        if (numSextets == 8) {
-                            // got 8 sextets
-                            break;
-                        }
-                    } else {
-                        // got not base64 alphabet member
-                        if (b != (int) '-') {
-                            // omit '-' or cache other
-                            cache.add((byte) 0);
-                            cache.add((byte) b);
-                        } else {
-                            wasMinus = true;
+        if(ringSize == 0 && !fill()) {
+            return -1;
+        }
+        int res = (int)ring[ringHead] & 0xFF;
+        ringHead = ringHead + 1 & RING_MASK;
+        ringSize--;
+        return res;
+    }
+    
+    @Override
+    public int read(final byte[] b, final int off, final int len) 
+            throws IOException {
+        if(off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        int n = 0;
+        while(n < len) {
+            if(ringSize > 0) {
+                b[off + n++] = ring[ringHead];
+                ringHead = ringHead + 1 & RING_MASK;
+                ringSize--;
+                continue;
+            }
+            int start = n;
+            if(!atStart) {
+                if(inBase64) { 
+                    // base64 chunk straight from the block
+                    int code;
+                    while(len - n > 1 && blockPosition < blockLength && 
+                            (code = getBase64Code(block[blockPosition])) 
+                            != -1) {
+                        blockPosition++;
+                        bits = bits << 6 | code;
+                        bitCount += 6;
+                        if(bitCount >= 16) {
+                            bitCount -= 16;
+                            b[off + n++] = (byte)(bits >>> bitCount + 8);
+                            b[off + n++] = (byte)(bits >>> bitCount);
                         }
-                        inBase64 = false; // leave base64 chunk
-                        break;
                     }
-                }
-                if(res == -1) { // if didn't get not encoded symbol 
-                                // then processed buffer
-                    if (numSextets > 0) {
-                        // omit extra bits
-                        bufferSize = 2 * ((numSextets * 3) / 8);
-                        // check if the extra bits are zeros
-                        for(int i = bufferSize; i < buffer.length; i++) {
-                            if(buffer[i] != 0) {
-                                throw new IOException("Invalid code!");
-                            }
-                        }
-                        int[] bbb = new int[bufferSize];
-                        for(int i = 0; i < bufferSize; i++) {
-                            bbb[i] = (int)buffer[i] & 0xFF;
-                        }
+                } else {
+                    // not encoded symbols straight from the block
+                    while(len - n > 1 && blockPosition < blockLength && 
+                            block[blockPosition] != '+') {
+                        b[off + n++] = 0;
+                        b[off + n++] = block[blockPosition++];
                     }
                 }
             }
-        }
-        if(tail < bufferSize) { // if there are data in the buffer
-                                // return it
-            res = (int)buffer[tail++] & 0xFF;
-        } else if(wasMinus) {
-            res = read();
-        }
-        if(res != -1) {
-            // check the BOM 0xFF 0xFE and cut it
-            if(outPosition == 0 && res == 0xFE && ((int)buffer[tail] & 0xFF) == 0xFF) {
-                outPosition = 2;
-                tail++;
-                res = read();
-            } else {
-                outPosition++;
+            if(n == start && !fill()) {
+                break;
             }
         }
-        return res;
+        return n == 0 && len > 0 ? -1 : n;
     }
 }
-
@@ -0,0 +1,228 @@
+/*
+ * net.leksi.io.UTF7OutputStream
+ * 
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The class {@code UTF7OutputStream} takes UTF-16BE encoded data and writes 
+ * it on UTF-7 encoding. It is the counterpart of {@link UTF7InputStream}. The 
+ * output is collected by blocks. {@link #flush()} leaves the current base64 
+ * chunk, so the data written so far can be decoded as is.
+ * 
+ * @author Alexey Zakharov &lt;leksi@leksi.net&gt;
+ * @since JDK1.8
+ */
+public class UTF7OutputStream extends OutputStream {
+
+    /**
+     * The underlying {@code OutputStream} object.
+     */
+    private final OutputStream target;
+    /**
+     * The flag signalling if the optional direct symbols are to be encoded 
+     * with base64.
+     */
+    private final boolean encodeOptional;
+    /**
+     * The block of data to write to the {@code target}.
+     */
+    private final byte[] block = new byte[0x1000];
+    /**
+     * The length of data in the {@code block}.
+     */
+    private int blockLength = 0;
+    /**
+     * The most significant byte of the unit being written or -1.
+     */
+    private int high = -1;
+    /**
+     * The flag signalling if the current position of the output is in
+     * base64 chunk.
+     */
+    private boolean inBase64 = false;
+    /**
+     * The bits not yet given as base64 digit. Only the lowest 
+     * {@code bitCount} bits matter.
+     */
+    private int bits = 0;
+    /**
+     * The number of bits not yet given.
+     */
+    private int bitCount = 0;
+
+    /**
+     * Creates {@code UTF7OutputStream} object over the given 
+     * {@code OutputStream}. The optional direct symbols are written directly.
+     * @param target the given {@code OutputStream}.
+     */
+    public UTF7OutputStream(final OutputStream target) {
+        this(target, false);
+    }
+
+    /**
+     * Creates {@code UTF7OutputStream} object over the given 
+     * {@code OutputStream}.
+     * @param target the given {@code OutputStream}.
+     * @param encodeOptional if the optional direct symbols (e.g. '!', '@') 
+     *                       are to be encoded with base64, as some mail 
+     *                       headers require.
+     */
+    public UTF7OutputStream(final OutputStream target, 
+            final boolean encodeOptional) {
+        this.target = target;
+        this.encodeOptional = encodeOptional;
+    }
+    
+    /**
+     * Encodes the 16-bit unit to the {@code block}.
+     * @param unit the unit
+     * @throws IOException re-throws stream's IOException
+     */
+    private void encode(final int unit) throws IOException {
+        if(blockLength > block.length - 6) {
+            // the longest unit is '+' and 3 digits, then leaving base64 
+            // chunk may give the last digit and '-'
+            drain();
+        }
+        if(unit < 0x80 && (UTF7Charset.SETS[unit] == UTF7Charset.DIRECT || 
+                UTF7Charset.SETS[unit] == UTF7Charset.OPTIONAL && 
+                !encodeOptional)) {
+            if(inBase64) {
+                leaveBase64(UTF7Charset.BASE64[unit] != -1 || unit == '-');
+            }
+            block[blockLength++] = (byte)unit;
+        } else if(unit == '+' && !inBase64) {
+            block[blockLength++] = '+';
+            block[blockLength++] = '-';
+        } else {
+            if(!inBase64) {
+                block[blockLength++] = '+';
+                inBase64 = true;
+            }
+            bits = bits << 16 | unit;
+            bitCount += 16;
+            while(bitCount >= 6) {
+                bitCount -= 6;
+                block[blockLength++] = 
+                        UTF7Charset.DIGITS[bits >>> bitCount & 0x3F];
+            }
+        }
+    }
+    
+    /**
+     * Leaves base64 chunk giving the rest of bits.
+     * @param minus if the '-' is to be given
+     */
+    private void leaveBase64(final boolean minus) {
+        if(bitCount > 0) {
+            block[blockLength++] = 
+                    UTF7Charset.DIGITS[bits << 6 - bitCount & 0x3F];
+        }
+        if(minus) {
+            block[blockLength++] = '-';
+        }
+        inBase64 = false;
+        bits = 0;
+        bitCount = 0;
+    }
+    
+    /**
+     * Writes the {@code block} to the {@code target}.
+     * @throws IOException re-throws stream's IOException
+     */
+    private void drain() throws IOException {
+        if(blockLength > 0) {
+            target.write(block, 0, blockLength);
+            blockLength = 0;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if(high == -1) {
+            high = b & 0xFF;
+        } else {
+            encode(high << 8 | b & 0xFF);
+            high = -1;
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) 
+            throws IOException {
+        if(off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        int i = off;
+        int end = off + len;
+        if(high != -1 && i < end) {
+            encode(high << 8 | b[i++] & 0xFF);
+            high = -1;
+        }
+        while(i + 1 < end) {
+            encode((b[i] & 0xFF) << 8 | b[i + 1] & 0xFF);
+            i += 2;
+        }
+        if(i < end) {
+            high = b[i] & 0xFF;
+        }
+    }
+
+    /**
+     * Leaves the current base64 chunk and flushes the {@code target}. The 
+     * incomplete unit if any stays until its second byte is written.
+     * @throws IOException re-throws stream's IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        if(inBase64) {
+            leaveBase64(true);
+        }
+        drain();
+        target.flush();
+    }
+
+    /**
+     * Flushes and closes the {@code target}.
+     * @throws IOException re-throws stream's IOException or if an odd 
+     *                     number of bytes was written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if(high != -1) {
+                high = -1;
+                throw new IOException("Cannot encode incomplete unit.");
+            }
+        } finally {
+            target.close();
+        }
+    }
+    
+}
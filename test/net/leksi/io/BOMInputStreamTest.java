@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class BOMInputStreamTest {
+    
+    public BOMInputStreamTest() {
+    }
+    
+    /**
+     * Returns a stream not supporting mark giving a byte per read.
+     */
+    private static InputStream trickle(final byte[] data) {
+        return new InputStream() {
+            int position = 0;
+            @Override
+            public int read() throws IOException {
+                return position < data.length ? data[position++] & 0xFF : -1;
+            }
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(position == data.length) {
+                    return -1;
+                }
+                b[off] = data[position++];
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * Test of read methods, of class BOMInputStream.
+     */
+    @Test
+    public void testRead() throws Exception {
+        System.out.println("read");
+        byte[][] input = new byte[][]{
+            new byte[]{(byte)0xEF, (byte)0xBB, (byte)0xBF, 1, 2, 3, 4, 5, 6, 7},
+            new byte[]{(byte)0xFF, (byte)0xFE, 1, 0},
+            new byte[]{(byte)0xFF, (byte)0xFE, 0, 0, 1, 0, 0, 0},
+            new byte[]{(byte)0x2B, (byte)0x2F, (byte)0x76, (byte)0x38, (byte)0x2D, 0x41},
+            new byte[]{(byte)0xFE, (byte)0xFF},
+            new byte[]{0x41, 0x42, 0x43},
+            new byte[]{},
+        };
+        String[] expResults = new String[]{"UTF-8", "UTF-16LE", "UTF-32LE", "UTF-7", "UTF-16BE", null, null};
+        int[] skipped = new int[]{3, 2, 4, 0, 2, 0, 0};
+        byte[] buf = new byte[32];
+        for(int i = 0; i < input.length; i++) {
+            try(BOMInputStream stream = new BOMInputStream(trickle(input[i]))) {
+                assertEquals(expResults[i], stream.getCharsetName());
+                int n = 0;
+                int r;
+                while((r = stream.read(buf, n, buf.length - n)) > 0) {
+                    n += r;
+                }
+                assertArrayEquals(Arrays.copyOfRange(input[i], skipped[i], input[i].length), 
+                        Arrays.copyOf(buf, n));
+            }
+        }
+        /*
+         * no more bytes are read ahead than needed
+         */
+        ByteArrayInputStream source = new ByteArrayInputStream(new byte[]{0x41, 0x42, 0x43});
+        BOMInputStream stream = new BOMInputStream(trickle(new byte[]{0x41, 0x42}));
+        assertNull(stream.getMatch());
+        assertEquals(0x41, stream.read());
+        assertEquals(1, stream.skip(5));
+        assertEquals(-1, stream.read());
+        stream = new BOMInputStream(source);
+        assertEquals(0x41, stream.read());
+        assertEquals(2, stream.available());
+    }
+    
+}
@@ -25,6 +25,10 @@ package net.leksi.io;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.stream.IntStream;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -108,4 +112,53 @@ public class BOMTest {
         }
     }
     
+    /**
+     * Test of test method, of class BOM, shared by threads.
+     */
+    @Test
+    public void testInstance() throws Exception {
+        System.out.println("instance");
+        byte[][] input = new byte[][]{
+            new byte[]{(byte)0xFF, (byte)0xFE},
+            new byte[]{(byte)0xFF, (byte)0xFE, 0, 0},
+            new byte[]{(byte)0xFF},
+            new byte[]{},
+            new byte[]{(byte)0xEF, (byte)0xBB, (byte)0xBF},
+        };
+        String[] expResults = new String[]{"UTF-16LE", "UTF-32LE", null, null, "UTF-8"};
+        assertEquals(0, IntStream.range(0, 10000).parallel().filter(i -> {
+            try(BufferedInputStream stream = new BufferedInputStream(new ByteArrayInputStream(input[i % input.length]))) {
+                return !Objects.equals(expResults[i % input.length], BOM.INSTANCE.test(stream));
+            } catch(IOException ex) {
+                return true;
+            }
+        }).count());
+    }
+    
+    /**
+     * Test of match methods, of class BOM.
+     */
+    @Test
+    public void testMatch() throws Exception {
+        System.out.println("match");
+        byte[] data = new byte[]{1, (byte)0xFF, (byte)0xFE, 0, 0, 1};
+        BOM.Match match = BOM.INSTANCE.match(data, 1, 5);
+        assertEquals("UTF-32LE", match.getCharsetName());
+        assertEquals(4, match.getLength());
+        assertSame(match, BOM.INSTANCE.match(data, 1, 5));
+        assertEquals("UTF-16LE", BOM.INSTANCE.match(data, 1, 3).getCharsetName());
+        assertNull(BOM.INSTANCE.match(data));
+        assertNull(BOM.INSTANCE.match(new byte[]{}));
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0x2B, 0x2F, 0x76, 0x38, 0x2D});
+        match = BOM.INSTANCE.match(buffer);
+        assertEquals("UTF-7", match.getCharsetName());
+        assertEquals(0, match.getLength());
+        assertEquals(0, buffer.position());
+        buffer.position(1);
+        assertNull(BOM.INSTANCE.match(buffer));
+        buffer = ByteBuffer.allocateDirect(8);
+        buffer.put(new byte[]{(byte)0xEF, (byte)0xBB, (byte)0xBF}).flip();
+        assertEquals(3, BOM.INSTANCE.match(buffer).getLength());
+    }
+    
 }
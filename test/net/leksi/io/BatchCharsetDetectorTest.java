@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class BatchCharsetDetectorTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    public BatchCharsetDetectorTest() {
+    }
+    
+    private Path write(final String name, final byte[] data) throws IOException {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, data);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(1000000000000L));
+        return path;
+    }
+
+    /**
+     * Test of detect method, of class BatchCharsetDetector.
+     */
+    @Test
+    public void testDetect() throws Exception {
+        System.out.println("detect");
+        String text = "Съешь же ещё этих мягких французских булок.\n";
+        Path bom = write("bom.txt", concat(new byte[]{(byte)0xff, (byte)0xfe}, 
+                text.getBytes(Charset.forName("UTF-16LE"))));
+        Path utf8 = write("utf8.txt", text.getBytes(Charset.forName("UTF-8")));
+        Path empty = write("empty.txt", new byte[0]);
+        try(BatchCharsetDetector detector = new BatchCharsetDetector(2)) {
+            Map<Path, BatchCharsetDetector.Result> results = 
+                    detector.detect(Arrays.asList(bom, utf8, empty));
+            assertArrayEquals(new Path[]{bom, utf8, empty}, 
+                    results.keySet().toArray());
+            assertEquals("UTF-16LE", results.get(bom).getCharsetName());
+            assertEquals(2, results.get(bom).getBomLength());
+            assertEquals(100, results.get(bom).getConfidence());
+            assertEquals("UTF-8", results.get(utf8).getCharsetName());
+            assertEquals(0, results.get(utf8).getBomLength());
+            assertNull(results.get(empty).getCharsetName());
+            /*
+             * the same size and time - the file is not read again
+             */
+            BatchCharsetDetector.Result result = results.get(utf8);
+            byte[] ascii = new byte[Files.readAllBytes(utf8).length];
+            Arrays.fill(ascii, (byte)'a');
+            write("utf8.txt", ascii);
+            assertSame(result, detector.detect(utf8));
+            /*
+             * the same file by another path is found in the cache
+             */
+            Files.createDirectory(utf8.resolveSibling("x"));
+            assertSame(result, detector.detect(utf8.resolveSibling("x")
+                    .resolve("..").resolve("utf8.txt")));
+            Files.setLastModifiedTime(utf8, FileTime.fromMillis(1000000001000L));
+            assertEquals("US-ASCII", detector.detect(utf8).getCharsetName());
+            try {
+                detector.detect(Arrays.asList(folder.getRoot().toPath()
+                        .resolve("missing.txt")));
+                fail();
+            } catch(IOException ex) {
+            }
+        }
+    }
+
+    /**
+     * Test of save method, of class BatchCharsetDetector.
+     */
+    @Test
+    public void testSave() throws Exception {
+        System.out.println("save");
+        Path cache = folder.getRoot().toPath().resolve("charsets.cache");
+        Path utf8 = write("a\tb.txt", "ёж".getBytes(Charset.forName("UTF-8")));
+        Path empty = write("empty.txt", new byte[0]);
+        try(BatchCharsetDetector detector = new BatchCharsetDetector(1, cache)) {
+            detector.detect(Arrays.asList(utf8, empty));
+        }
+        assertTrue(Files.exists(cache));
+        try(Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertFalse(files.anyMatch(p -> p.toString().endsWith(".tmp")));
+        }
+        /*
+         * the cached result is used after the loading
+         */
+        write("a\tb.txt", "abcd".getBytes(Charset.forName("UTF-8")));
+        try(BatchCharsetDetector detector = new BatchCharsetDetector(1, cache)) {
+            assertEquals("UTF-8", detector.detect(utf8).getCharsetName());
+            assertNull(detector.detect(empty).getCharsetName());
+        }
+    }
+
+    /**
+     * Test of loading the cache with special paths and corrupt lines.
+     */
+    @Test
+    public void testLoad() throws Exception {
+        System.out.println("load");
+        Path cache = folder.getRoot().toPath().resolve("charsets.cache");
+        Path odd = write("a\nb\\t.txt", "\u0451\u0436".getBytes(Charset.forName("UTF-8")));
+        try(BatchCharsetDetector detector = new BatchCharsetDetector(1, cache)) {
+            detector.detect(odd);
+        }
+        Files.write(cache, concat(("1\tx\tUTF-8\t0\t100\t/a\n"
+                + "broken\n" + "1\t2\tUTF-8\t0\t100\t/a\\q\n").getBytes(Charset.forName("UTF-8")), 
+                Files.readAllBytes(cache)));
+        write("a\nb\\t.txt", "abcd".getBytes(Charset.forName("UTF-8")));
+        try(BatchCharsetDetector detector = new BatchCharsetDetector(1, cache)) {
+            assertEquals("UTF-8", detector.detect(odd).getCharsetName());
+        }
+    }
+    
+    private static byte[] concat(final byte[] a, final byte[] b) {
+        byte[] res = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, res, a.length, b.length);
+        return res;
+    }
+    
+}
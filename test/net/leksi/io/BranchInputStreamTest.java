@@ -322,5 +322,46 @@ public class BranchInputStreamTest {
         return res;
     }
     
+    @Test
+    public void testShortReads() throws Exception {
+        System.out.println("testShortReads");
+        byte[] data = new byte[0x1000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 7);
+        }
+        /*
+         * the source giving at most 3 bytes per read, so a chunk is filled 
+         * by many reads
+         */
+        InputStream source = new InputStream() {
+            int position = 0;
+            
+            @Override
+            public int read() throws IOException {
+                return position < data.length ? data[position++] & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(position == data.length) {
+                    return -1;
+                }
+                int n = Math.min(Math.min(len, 3), data.length - position);
+                System.arraycopy(data, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+        try(BranchInputStream bis = BranchInputStream.create(source, 0x100)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[0x123];
+            int n;
+            while((n = bis.read(buffer)) >= 0) {
+                result.write(buffer, 0, n);
+            }
+            assertArrayEquals(data, result.toByteArray());
+        }
+    }
+    
     
 }
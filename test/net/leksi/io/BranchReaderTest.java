@@ -23,6 +23,8 @@
  */
 package net.leksi.io;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -35,6 +37,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.junit.After;
@@ -70,6 +75,7 @@ public class BranchReaderTest {
 
     StringBuilder text = new StringBuilder();       // Reference text data
     String resource = "kolesnica.txt_Ascii.txt ";   // Source text file
+    String textResource = "kolesnica.txt_Ascii.txt"; // The same file by its name
     int initial_readers_count = 123;                // Initial branches number
     int n_repeats = 100;                            // 
     Map<Integer, String> strings = Collections.synchronizedMap(new HashMap<>());
@@ -642,4 +648,694 @@ public class BranchReaderTest {
         }
     }
 
+    @Test
+    public void testChunkRefill() throws Exception {
+        System.out.println("testChunkRefill");
+        int[] numReads = new int[]{0};
+        String data = String.join("", Collections.nCopies(1000, "0123456789"));
+        Reader counting = new StringReader(data) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                numReads[0]++;
+                return super.read(cbuf, off, len);
+            }
+        };
+        try(BranchReader source = BranchReader.create(counting, 0x100)) {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while((c = source.read()) >= 0) {
+                sb.append((char)c);
+            }
+            assertEquals(data, sb.toString());
+            /**
+             * one call per whole chunk and one to meet the end
+             */
+            assertEquals(data.length() / 0x100 + 2, numReads[0]);
+        }
+    }
+
+    @Test
+    public void testReadPeek() throws Exception {
+        System.out.println("testReadPeek");
+        try(
+            BranchReader source = BranchReader.create(getClass().getClassLoader().getResourceAsStream(textResource), "UTF-8", false, 0x100);
+        ) {
+            BranchReader br = source.branch(1)[0];
+            char buf[] = new char[0xAA8];
+            int n = br.read(buf);
+            for(int i = 0; i < n; i++) {
+                assertEquals(buf[i], source.peek());
+                assertEquals(buf[i], source.read());
+            }
+            assertEquals(br.getLine(), source.getLine());
+            assertEquals(br.getCharPositionInLine(), source.getCharPositionInLine());
+            
+            source.unread(buf, n - 2, 2);
+            assertEquals(buf[n - 2], source.peek());
+            assertEquals(buf[n - 2], source.read());
+            assertEquals(buf[n - 1], source.read());
+            assertEquals(br.getLine(), source.getLine());
+            assertEquals(br.getCharPositionInLine(), source.getCharPositionInLine());
+            
+            assertEquals(br.read(), source.read());
+            br.close();
+            assertEquals(-1, br.peek());
+            assertEquals(-1, br.read());
+        }
+    }
+
+    @Test
+    public void testThreadConfined() throws Exception {
+        System.out.println("testThreadConfined");
+        try(
+            BranchReader source = BranchReader.create(getClass().getClassLoader().getResourceAsStream(textResource), "UTF-8", false, 0x100);
+        ) {
+            assertFalse(source.isThreadConfined());
+            BranchReader[] br = source.branch(2, true);
+            assertTrue(br[0].isThreadConfined());
+            assertTrue(br[1].isThreadConfined());
+            assertFalse(br[0].branch(1)[0].isThreadConfined());
+            assertTrue(br[0].branch(1, true)[0].isThreadConfined());
+            
+            char buf[] = new char[0x1000];
+            char buf1[] = new char[0x1000];
+            int n;
+            while((n = source.read(buf)) > 0) {
+                assertEquals(n, br[0].read(buf1, 0, n));
+                assertArrayEquals(Arrays.copyOf(buf, n), Arrays.copyOf(buf1, n));
+                br[0].unread(buf1, n - 1, 1);
+                assertEquals(buf1[n - 1], br[0].peek());
+                assertEquals(buf1[n - 1], br[0].read());
+                assertEquals(source.getLine(), br[0].getLine());
+                assertEquals(source.getCharPositionInLine(), br[0].getCharPositionInLine());
+            }
+            assertEquals(-1, br[0].read());
+            br[1].closeOthers();
+            assertTrue(br[0].isClosed());
+            assertEquals(1, br[1].getBranches().length);
+        }
+    }
+
+    @Test
+    public void testPeekView() throws Exception {
+        System.out.println("testPeekView");
+        BranchReader source = BranchReader.create(getClass().getClassLoader().getResourceAsStream(textResource), "UTF-8", false, 0x100);
+        BranchReader br = source.branch(1)[0];
+        char buf[] = new char[0x1000];
+        int n = br.read(buf);
+        
+        CharSequence view = source.peek(0x1000);
+        assertEquals(n, view.length());
+        assertEquals(String.valueOf(buf, 0, n), view.toString());
+        assertEquals(String.valueOf(buf, 0x123, 0x345), view.subSequence(0x123, 0x123 + 0x345).toString());
+        for(int i = n - 1; i >= 0; i -= 7) {
+            assertEquals(buf[i], view.charAt(i));
+            assertEquals(buf[i], source.lookAhead(i));
+        }
+        assertEquals(1, source.getLine());
+        assertEquals(1, source.getCharPositionInLine());
+        
+        assertEquals(0x10, source.read(buf, 0, 0x10));
+        source.unread(buf, 0, 0x10);
+        assertEquals(String.valueOf(buf, 0, 0x20), source.peek(0x20).toString());
+        assertEquals(String.valueOf(buf, 0, 0x8), source.peek(0x8).toString());
+        assertEquals(buf[0x18], source.lookAhead(0x18));
+        
+        source.trim(br);
+        assertEquals(n, source.peek(n + 1).length());
+        assertEquals(-1, source.lookAhead(n));
+        source.close();
+        assertEquals(0, source.peek(1).length());
+        assertEquals(-1, source.lookAhead(0));
+        br.close();
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        System.out.println("testSkip");
+        try(
+            BranchReader source = BranchReader.create(getClass().getClassLoader().getResourceAsStream(textResource), "UTF-8", false, 0x100);
+        ) {
+            BranchReader br = source.branch(1)[0];
+            char buf[] = new char[0xAA8];
+            int n = br.read(buf);
+            assertEquals(n - 0x10, source.skip(n - 0x10));
+            source.unread(buf, n - 0x20, 0x10);
+            assertEquals(0x20, source.skip(0x20));
+            assertEquals(br.getLine(), source.getLine());
+            assertEquals(br.getCharPositionInLine(), source.getCharPositionInLine());
+            assertEquals(br.read(), source.read());
+            source.trim(br);
+            assertEquals(0, source.skip(1));
+        }
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        System.out.println("testScan");
+        try(
+            BranchReader source = BranchReader.create(new StringReader("  \t\nident_1 = 42;\r\nkey::value::\n\nlast"), 4);
+        ) {
+            StringBuilder sb = new StringBuilder();
+            assertEquals(4, source.skipWhile(Character::isWhitespace));
+            assertEquals(2, source.getLine());
+            assertEquals(1, source.getCharPositionInLine());
+            assertEquals(7, source.readWhile(c -> Character.isLetterOrDigit(c) || c == '_', sb));
+            assertEquals("ident_1", sb.toString());
+            assertEquals(8, source.getCharPositionInLine());
+            assertEquals(0, source.readWhile(Character::isLetter, sb));
+            source.unread(sb.toString().toCharArray(), 5, 2);
+            assertEquals(6, source.getCharPositionInLine());
+            assertEquals(1, source.skipWhile(c -> c == '_'));
+            assertEquals(1, source.skipWhile(c -> c == '1'));
+            assertEquals(" = 42", source.readUntil(';'));
+            assertEquals("", source.readLine());
+            assertEquals(3, source.getLine());
+            assertEquals("key", source.readUntil("::"));
+            assertEquals("value", source.readUntil("::"));
+            assertEquals(3, source.getLine());
+            assertEquals(13, source.getCharPositionInLine());
+            assertEquals("", source.readLine());
+            assertEquals("", source.readLine());
+            assertEquals("last", source.readUntil("::"));
+            assertNull(source.readUntil("::"));
+            assertNull(source.readUntil(';'));
+            assertNull(source.readLine());
+        }
+        try(
+            BranchReader source = BranchReader.create(getClass().getClassLoader().getResourceAsStream(textResource), "UTF-8", false, 0x100);
+            BufferedReader reference = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(textResource), "UTF-16"));
+        ) {
+            String line;
+            int count = 0;
+            while((line = reference.readLine()) != null) {
+                count++;
+                assertEquals(line, source.readLine());
+                assertEquals(count + 1, source.getLine());
+            }
+            assertNull(source.readLine());
+        }
+    }
+
+    @Test
+    public void testReadNumbers() throws Exception {
+        System.out.println("testReadNumbers");
+        try(
+            BranchReader source = BranchReader.create(new StringReader("123 -456 +7 2147483648 -9223372036854775808 x -"), 4);
+        ) {
+            assertEquals(123, source.readInt());
+            assertEquals(4, source.getCharPositionInLine());
+            source.skip(1);
+            assertEquals(-456, source.readInt());
+            source.skip(1);
+            assertEquals(7, source.readLong());
+            source.skip(1);
+            try {
+                source.readInt();
+                fail();
+            } catch(NumberFormatException ex) {
+                assertEquals("No valid number at line 1, column 13", ex.getMessage());
+            }
+            assertEquals(2147483648L, source.readLong());
+            source.skip(1);
+            assertEquals(Long.MIN_VALUE, source.readLong());
+            source.skip(1);
+            for(int i = 0; i < 2; i++) {
+                try {
+                    source.readLong();
+                    fail();
+                } catch(NumberFormatException ex) {
+                }
+                assertEquals(i == 0 ? 'x' : '-', source.read());
+                source.skip(1);
+            }
+        }
+        String[] doubles = new String[]{"3.25", "-0.5e3", "1e400", ".5", 
+            "12345678901234567890.5", "1.7976931348623157e308", "4.9e-324", 
+            "0.1", "-0", "0.000123456789012345", "123456789012345e-30", 
+            "9007199254740993", "1e22", "1e37", "2.5E+10", "00012"};
+        StringBuilder sb = new StringBuilder();
+        for(String d: doubles) {
+            sb.append(d).append(' ');
+        }
+        sb.append("5.x 7e 8e- .x");
+        try(
+            BranchReader source = BranchReader.create(new StringReader(sb.toString()), 5);
+        ) {
+            for(String d: doubles) {
+                assertEquals(d, Double.doubleToLongBits(Double.parseDouble(d)), Double.doubleToLongBits(source.readDouble()));
+                assertEquals(' ', source.read());
+            }
+            assertEquals(5.0, source.readDouble(), 0.0);
+            assertEquals('.', source.read());
+            source.skip(2);
+            assertEquals(7.0, source.readDouble(), 0.0);
+            assertEquals('e', source.read());
+            source.skip(1);
+            assertEquals(8.0, source.readDouble(), 0.0);
+            assertEquals('e', source.read());
+            source.skip(2);
+            try {
+                source.readDouble();
+                fail();
+            } catch(NumberFormatException ex) {
+            }
+            assertEquals('.', source.read());
+        }
+    }
+
+    @Test
+    public void testReadInterned() throws Exception {
+        System.out.println("testReadInterned");
+        try(BranchReader reader = BranchReader.create(new StringReader("if x1 if\nx1 if"), 4, 16)) {
+            BranchReader branch = reader.branch(1)[0];
+            String token = reader.readWhileInterned(Character::isLetterOrDigit);
+            assertEquals("if", token);
+            assertEquals("", reader.readWhileInterned(Character::isLetterOrDigit));
+            reader.skip(1);
+            String x1 = reader.readWhileInterned(Character::isLetterOrDigit);
+            assertEquals("x1", x1);
+            reader.skip(1);
+            assertSame(token, reader.readToken(2));
+            reader.skip(1);
+            assertSame(x1, reader.readWhileInterned(Character::isLetterOrDigit));
+            assertEquals(2, reader.getLine());
+            assertEquals(3, reader.getCharPositionInLine());
+            reader.unread(' ');
+            assertEquals("  if", reader.readToken(5));
+            assertNull(reader.readToken(1));
+            assertEquals("", reader.readWhileInterned(Character::isLetterOrDigit));
+            assertSame(token, branch.readToken(2));
+            assertEquals(" ", branch.readToken(1));
+            assertSame(x1, branch.readToken(2));
+        }
+    }
+    
+    @Test
+    public void testMemo() throws Exception {
+        System.out.println("testMemo");
+        try(BranchReader reader = BranchReader.create(new StringReader("abc\ndef"), 2)) {
+            BranchReader branch = reader.branch(1)[0];
+            assertNull(reader.recall(1));
+            long start = reader.getPosition();
+            assertEquals(0, start);
+            reader.skip(5);
+            BranchReader.Memo memo = reader.memoize(1, start, "abc\nd");
+            assertEquals(5, memo.getEnd());
+            assertSame(memo, branch.recall(1));
+            assertEquals(5, branch.getPosition());
+            assertEquals(2, branch.getLine());
+            assertEquals(2, branch.getCharPositionInLine());
+            assertEquals('e', branch.read());
+            assertNull(branch.recall(1));
+            branch.unread('e');
+            assertEquals(5, branch.getPosition());
+            assertNull(branch.memoize(2, 5, null));
+            try {
+                reader.memoize(1, 6, null);
+                fail();
+            } catch(IllegalArgumentException ex) {
+            }
+        }
+    }
+    
+    @Test
+    public void testCheckpoint() throws Exception {
+        System.out.println("testCheckpoint");
+        try(BranchReader reader = BranchReader.create(new StringReader("ab\ncdefgh"), 2)) {
+            BranchReader other = reader.branch(1)[0];
+            reader.unread('x');
+            BranchReader.Checkpoint cp = reader.checkpoint();
+            assertEquals('x', reader.read());
+            assertEquals("ab\ncde", reader.readToken(6));
+            assertEquals(2, reader.getLine());
+            reader.restore(cp);
+            assertEquals(1, reader.getLine());
+            assertEquals(-1, reader.getPosition());
+            assertEquals('x', reader.read());
+            reader.skip(5);
+            BranchReader.Checkpoint cp1 = reader.checkpoint();
+            assertEquals('e', reader.read());
+            reader.restore(cp1);
+            assertEquals('e', reader.read());
+            reader.release(cp1);
+            try {
+                reader.restore(cp1);
+                fail();
+            } catch(IOException ex) {
+                assertEquals("Cannot restore released checkpoint.", ex.getMessage());
+            }
+            try {
+                other.restore(cp);
+                fail();
+            } catch(IOException ex) {
+                assertEquals("Cannot restore alien checkpoint.", ex.getMessage());
+            }
+            reader.restore(cp);
+            assertEquals('x', reader.read());
+            assertEquals('a', reader.read());
+            reader.release(cp);
+            reader.release(cp);
+            assertEquals('b', reader.read());
+        }
+    }
+    
+    @Test
+    public void testSharedPushback() throws Exception {
+        System.out.println("testSharedPushback");
+        try(BranchReader reader = BranchReader.create(new StringReader("abc"))) {
+            reader.unread("xy".toCharArray());
+            BranchReader[] br = reader.branch(3);
+            assertEquals('x', reader.read());
+            reader.unread('w');
+            assertEquals("xya", br[0].readToken(3));
+            br[1].unread('z');
+            assertEquals("zxya", br[1].readToken(4));
+            assertEquals(-2, br[2].getPosition());
+            br[2].close();
+            assertEquals("wyabc", reader.readToken(10));
+            BranchReader[] br1 = br[0].branch(2, true);
+            assertEquals('b', br1[0].read());
+            assertEquals('b', br1[1].read());
+            assertEquals(5, reader.getBranches().length);
+        }
+    }
+    
+    @Test
+    public void testLazyBranches() throws Exception {
+        System.out.println("testLazyBranches");
+        StringReader source = new StringReader("abc");
+        BranchReader reader = BranchReader.create(source);
+        reader.unread('x');
+        BranchReader[] br = reader.branch(1000);
+        for(int i = 1; i < br.length; i++) {
+            br[i].close();
+        }
+        assertEquals(2, reader.getBranches().length);
+        assertEquals('x', reader.read());
+        assertEquals('x', br[0].read());
+        assertEquals(2, reader.getBranches().length);
+        BranchReader[] br1 = br[0].branch(3, true);
+        reader.close();
+        br[0].close();
+        assertEquals(3, br1[0].getBranches().length);
+        assertTrue(source.ready());
+        assertEquals('a', br1[1].read());
+        br1[0].close();
+        br1[1].close();
+        assertTrue(source.ready());
+        br1[2].close();
+        try {
+            source.ready();
+            fail("The source is not closed.");
+        } catch(IOException ex) {
+        }
+        assertEquals(0, reader.getAbandonedCount());
+    }
+    
+    @Test
+    public void testCursorTable() throws Exception {
+        System.out.println("testCursorTable");
+        String text = "one\ntwo three\nfour\n";
+        BranchReader reader = BranchReader.create(new StringReader(text), 4);
+        reader.unread('x');
+        BranchReader.CursorTable table = reader.cursorTable();
+        reader.close();
+        assertEquals(1, table.size());
+        assertEquals('x', table.read(0));
+        int c1 = table.fork(0);
+        assertEquals(2, table.size());
+        assertEquals('o', table.read(0));
+        assertEquals('o', table.peek(c1));
+        table.unread(c1, 'y');
+        table.unread(c1, 'z');
+        assertEquals(-2, table.getPosition(c1));
+        int c2 = table.fork(c1);
+        assertEquals('z', table.read(c2));
+        table.unread(c1, 'w');
+        assertEquals('y', table.read(c2));
+        assertEquals('w', table.read(c1));
+        assertEquals('z', table.read(c1));
+        for(int i = 0; i < 5; i++) {
+            table.read(c2);
+        }
+        assertEquals(2, table.getLine(c2));
+        assertEquals(2, table.getCharPositionInLine(c2));
+        table.unread(c2, 't');
+        table.unread(c2, '\n');
+        assertEquals(1, table.getLine(c2));
+        assertEquals(6, table.getCharPositionInLine(c2));
+        BranchReader exposed = table.expose(c2);
+        assertEquals(1, exposed.getLine());
+        assertEquals(6, exposed.getCharPositionInLine());
+        assertEquals("\ntwo three", exposed.readToken(10));
+        assertEquals(2, exposed.getLine());
+        table.close(c2);
+        assertTrue(table.isClosed(c2));
+        assertEquals(-1, table.read(c2));
+        assertEquals(c2, table.fork(0));
+        assertEquals('n', table.read(c2));
+        /*
+         * many cursors reading and pushing back all along the data
+         */
+        int[] cursors = new int[1000];
+        for(int i = 0; i < cursors.length; i++) {
+            cursors[i] = table.fork(0);
+            for(int j = 0; j < i % text.length(); j++) {
+                table.read(cursors[i]);
+            }
+            table.unread(cursors[i], (char)('A' + i % 26));
+        }
+        assertEquals(1003, table.size());
+        for(int i = 0; i < cursors.length; i++) {
+            assertEquals('A' + i % 26, table.read(cursors[i]));
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while((c = table.read(cursors[i])) >= 0) {
+                sb.append((char)c);
+            }
+            assertEquals(text.substring(Math.min(1 + i % text.length(), text.length())), sb.toString());
+        }
+        table.close();
+        assertTrue(table.isClosed(0));
+        assertEquals('\n', exposed.read());
+        assertEquals(1, exposed.getBranches().length);
+        exposed.close();
+    }
+    
+    @Test
+    public void testCursorTable_Trimmed() throws Exception {
+        System.out.println("testCursorTable_Trimmed");
+        try(BranchReader reader = BranchReader.create(new StringReader("abcdef"), 4)) {
+            BranchReader other = reader.branch(1, true)[0];
+            other.skip(2);
+            reader.trim(other);
+            BranchReader.CursorTable table = reader.cursorTable();
+            assertEquals(2, reader.getBranches().length);
+            int c1 = table.fork(0);
+            assertEquals('a', table.read(0));
+            assertEquals('b', table.read(0));
+            assertEquals(-1, table.read(0));
+            assertEquals('a', table.read(c1));
+            BranchReader exposed = table.expose(c1);
+            assertEquals("b", exposed.readToken(10));
+            assertEquals(-1, exposed.read());
+            table.close();
+            assertEquals(3, reader.getBranches().length);
+            for(BranchReader branch: reader.getBranches()) {
+                if(branch != exposed) {
+                    assertTrue(branch.read() >= 0);
+                }
+            }
+            exposed.close();
+            other.close();
+        }
+    }
+    
+    @Test
+    public void testAbandonedBranches() throws Exception {
+        System.out.println("testAbandonedBranches");
+        try(BranchReader reader = BranchReader.create(new StringReader("abc"))) {
+            BranchReader kept = reader.branch(1)[0];
+            reader.branch(100);
+            assertEquals(102, reader.getBranches().length);
+            for(int i = 0; i < 100 && reader.getAbandonedCount() < 100; i++) {
+                System.gc();
+                Thread.sleep(10);
+                reader.branch(1)[0].close();
+            }
+            assertEquals(100, reader.getAbandonedCount());
+            assertEquals(2, reader.getBranches().length);
+            assertEquals('a', kept.read());
+            kept.close();
+            assertEquals(100, reader.getAbandonedCount());
+            assertEquals('a', reader.read());
+        }
+    }
+    
+    @Test
+    public void testSplit() throws Exception {
+        System.out.println("testSplit");
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            sb.append("line").append(i).append("\r\n");
+        }
+        String text = sb.toString();
+        try(BranchReader reader = BranchReader.create(new StringReader(text), 16)) {
+            reader.skip(2);
+            reader.unread("XY".toCharArray());
+            BranchReader[] regions = reader.splitLines(7);
+            assertEquals(7, regions.length);
+            assertEquals(0, reader.getPosition());
+            StringBuilder all = new StringBuilder();
+            int line = 1;
+            for(BranchReader region: regions) {
+                assertEquals(line, region.getLine());
+                assertEquals(1, region.getCharPositionInLine());
+                String content = region.readToken(text.length());
+                assertTrue(content.endsWith("\n"));
+                all.append(content);
+                line = region.getLine();
+                region.close();
+            }
+            assertEquals("XY" + text.substring(2), all.toString());
+            assertEquals(101, line);
+            regions = reader.split(50, c -> c == '9');
+            assertEquals(21, regions.length);
+            assertEquals("XYne0\r\nline1\r\nline2\r\nline3\r\nline4\r\nline5\r\nline6\r\nline7\r\nline8\r\nline9", 
+                    regions[0].readToken(100));
+            assertEquals(10, regions[0].getLine());
+            assertEquals(6, regions[0].getCharPositionInLine());
+            all.setLength(0);
+            all.append("XYne0\r\nline1\r\nline2\r\nline3\r\nline4\r\nline5\r\nline6\r\nline7\r\nline8\r\nline9");
+            for(int i = 1; i < regions.length; i++) {
+                String content = regions[i].readToken(text.length());
+                assertTrue(i == regions.length - 1 || content.endsWith("9"));
+                all.append(content);
+                assertNull(regions[i].readToken(1));
+            }
+            assertEquals("XY" + text.substring(2), all.toString());
+        }
+        try(BranchReader reader = BranchReader.create(new StringReader("a\nb"))) {
+            BranchReader[] regions = reader.splitLines(1);
+            assertEquals(1, regions.length);
+            assertEquals("a\nb", regions[0].readToken(10));
+            try {
+                reader.splitLines(0);
+                fail();
+            } catch(IllegalArgumentException ex) {
+            }
+        }
+    }
+    
+    @Test
+    public void testLines() throws Exception {
+        System.out.println("testLines");
+        StringBuilder sb = new StringBuilder();
+        String[] breaks = new String[]{"\n", "\r", "\r\n", "\n\n"};
+        for(int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append(breaks[i % breaks.length]);
+        }
+        sb.append("last");
+        String text = sb.toString();
+        List<String> expected;
+        try(BufferedReader br = new BufferedReader(new StringReader("a\nb" + text))) {
+            expected = br.lines().collect(Collectors.toList());
+        }
+        try(BranchReader reader = BranchReader.create(new StringReader(text), 100)) {
+            BranchReader branch = reader.branch(1)[0];
+            reader.unread("a\nb".toCharArray());
+            assertEquals(expected, reader.linesParallel().collect(Collectors.toList()));
+            assertEquals(expected.size(), reader.linesParallel().count());
+            assertEquals("a", reader.readLine());
+            assertEquals(expected.subList(1, expected.size()), reader.lines().collect(Collectors.toList()));
+            assertNull(reader.readLine());
+            branch.skip(text.length() - 5);
+            assertEquals(Arrays.asList("", "last"), branch.linesParallel().collect(Collectors.toList()));
+            assertEquals(0, reader.linesParallel().count());
+        }
+    }
+    
+    @Test
+    public void testCreate_InputStream_Detected() throws Exception {
+        System.out.println("testCreate_InputStream_Detected");
+        String text = "Lorem ipsum dolor sit amet,\nconsectetur adipiscing elit.";
+        for(String charset: new String[]{"UTF-16LE", "UTF-16BE", "UTF-32LE", "UTF-8"}) {
+            try(BranchReader reader = BranchReader.create(new ByteArrayInputStream(text.getBytes(charset)))) {
+                assertEquals(text, reader.readToken(text.length() + 1));
+            }
+        }
+        try(BranchReader reader = BranchReader.create(new ByteArrayInputStream(text.getBytes("UTF-16LE")), "UTF-16LE", false, 0)) {
+            assertEquals(text, reader.readToken(text.length() + 1));
+        }
+    }
+    
+    /**
+     * Test of create method with candidates, of class BranchReader.
+     */
+    @Test
+    public void testCreate_InputStream_Candidates() throws Exception {
+        System.out.println("testCreate_InputStream_Candidates");
+        StringBuilder sb = new StringBuilder();
+        while(sb.length() < 0x2000) {
+            sb.append("Съешь же ещё этих мягких французских булок, да выпей чаю.\n");
+        }
+        String text = sb.toString();
+        String[] candidates = new String[]{"UTF-16LE", "windows-1252", "windows-1251", "KOI8-R", "UTF-8"};
+        for(String charset: new String[]{"UTF-8", "windows-1251", "KOI8-R", "UTF-16LE"}) {
+            try(BranchReader reader = BranchReader.create(new ByteArrayInputStream(text.getBytes(charset)), candidates, 0)) {
+                assertEquals(charset, text, reader.readToken(text.length() + 1));
+            }
+        }
+        /*
+         * BOM wins
+         */
+        byte[] data = text.getBytes("UTF-16BE");
+        byte[] bom = new byte[data.length + 2];
+        bom[0] = (byte)0xfe;
+        bom[1] = (byte)0xff;
+        System.arraycopy(data, 0, bom, 2, data.length);
+        try(BranchReader reader = BranchReader.create(new ByteArrayInputStream(bom), candidates, 0)) {
+            assertEquals(text, reader.readToken(text.length() + 1));
+        }
+        try {
+            BranchReader.create(new ByteArrayInputStream(text.getBytes("UTF-8")), new String[]{"US-ASCII"}, 0);
+            fail();
+        } catch(IOException ex) {
+        }
+    }
+    
+    @Test
+    public void testCreate_InputStream_Candidates_Concurrent() throws Exception {
+        System.out.println("testCreate_InputStream_Candidates_Concurrent");
+        StringBuilder sb = new StringBuilder();
+        while(sb.length() < 0x3000) {
+            sb.append("\u0421\u044a\u0435\u0448\u044c \u0436\u0435 \u0435\u0449\u0451 \u044d\u0442\u0438\u0445 \u0431\u0443\u043b\u043e\u043a, " + sb.length() + ".\n");
+        }
+        String text = sb.toString();
+        String[] candidates = new String[]{"UTF-16LE", "windows-1252", "windows-1251", "KOI8-R", "UTF-8"};
+        String[] charsets = new String[]{"UTF-8", "windows-1251", "KOI8-R", "UTF-16LE"};
+        /*
+         * the probes read the chunks of the source concurrently, and so do 
+         * the factories
+         */
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for(int i = 0; i < 40; i++) {
+                String charset = charsets[i % charsets.length];
+                futures.add(executor.submit(() -> {
+                    try(BranchReader reader = BranchReader.create(new ByteArrayInputStream(text.getBytes(charset)), candidates, 0)) {
+                        return reader.readToken(text.length() + 1);
+                    }
+                }));
+            }
+            for(Future<String> future: futures) {
+                assertEquals(text, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
 }
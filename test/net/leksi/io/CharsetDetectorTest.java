@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class CharsetDetectorTest {
+    
+    public CharsetDetectorTest() {
+    }
+
+    /**
+     * Test of detect method, of class CharsetDetector.
+     */
+    @Test
+    public void testDetect() throws Exception {
+        System.out.println("detect");
+        String latin = "The quick brown fox jumps over the lazy dog.\n";
+        String cyrillic = "Съешь же ещё этих мягких французских булок.\n";
+        String[] charsets = new String[]{"UTF-32LE", "UTF-32BE", "UTF-16LE", "UTF-16BE", "US-ASCII"};
+        for(String charset: charsets) {
+            byte[] data = latin.getBytes(Charset.forName(charset));
+            CharsetDetector.Detection detection = CharsetDetector.INSTANCE.detect(data);
+            assertEquals(charset, detection.getCharsetName());
+            assertEquals(100, detection.getConfidence());
+        }
+        byte[] data = (latin + cyrillic).getBytes(Charset.forName("UTF-8"));
+        assertEquals("UTF-8", CharsetDetector.INSTANCE.detect(data).getCharsetName());
+        /*
+         * the sequence cut by the end of the sample
+         */
+        assertEquals("UTF-8", CharsetDetector.INSTANCE.detect(data, 0, latin.length() + 1).getCharsetName());
+        data = (latin + cyrillic).getBytes(Charset.forName("windows-1251"));
+        CharsetDetector.Detection detection = CharsetDetector.INSTANCE.detect(data);
+        assertEquals("ISO-8859-1", detection.getCharsetName());
+        assertTrue(detection.getConfidence() < 50);
+        assertEquals("ISO-8859-1", CharsetDetector.INSTANCE.detect(new byte[]{(byte)0xC0, (byte)0x80}).getCharsetName());
+        assertEquals("ISO-8859-1", CharsetDetector.INSTANCE.detect(new byte[]{(byte)0xED, (byte)0xA0, (byte)0x80}).getCharsetName());
+        data = (latin + cyrillic + latin).getBytes(Charset.forName("UTF-16BE"));
+        detection = CharsetDetector.INSTANCE.detect(ByteBuffer.wrap(data));
+        assertEquals("UTF-16BE", detection.getCharsetName());
+        assertTrue(detection.getConfidence() < 100);
+        assertNull(CharsetDetector.INSTANCE.detect(new byte[]{}));
+        assertEquals("US-ASCII", CharsetDetector.INSTANCE.detect(new byte[]{0}).getCharsetName());
+        assertTrue(CharsetDetector.INSTANCE.detect(new byte[]{0}).getConfidence() < 100);
+        /*
+         * the non-Latin text has zero bytes at spaces and punctuation only
+         */
+        for(String charset: new String[]{"UTF-16LE", "UTF-16BE"}) {
+            data = (cyrillic + cyrillic + cyrillic).getBytes(Charset.forName(charset));
+            detection = CharsetDetector.INSTANCE.detect(data);
+            assertEquals(charset, detection.getCharsetName());
+            assertEquals(cyrillic + cyrillic + cyrillic, new String(data, detection.getCharsetName()));
+        }
+        data = (latin + "\0" + latin).getBytes(Charset.forName("UTF-8"));
+        detection = CharsetDetector.INSTANCE.detect(data);
+        assertEquals("US-ASCII", detection.getCharsetName());
+        assertTrue(detection.getConfidence() < 100);
+    }
+    
+}
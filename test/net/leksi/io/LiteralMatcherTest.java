@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class LiteralMatcherTest {
+    
+    public LiteralMatcherTest() {
+    }
+
+    /**
+     * Test of matchAll and matchLongest methods, of class LiteralMatcher.
+     */
+    @Test
+    public void testMatch() throws Exception {
+        System.out.println("match");
+        LiteralMatcher matcher = new LiteralMatcher("in", "int", "if", "integer", "i", "int");
+        assertEquals(6, matcher.size());
+        assertEquals("integer", matcher.getLiteral(3));
+        try(BranchReader reader = BranchReader.create(new StringReader("integer if iff x"), 3)) {
+            assertArrayEquals(new int[]{4, 0, 1, 3}, matcher.matchAll(reader));
+            assertEquals(3, matcher.matchLongest(reader, false));
+            assertEquals('i', reader.peek());
+            assertEquals(3, matcher.matchLongest(reader, true));
+            assertEquals(8, reader.getCharPositionInLine());
+            assertEquals(-1, matcher.matchLongest(reader, true));
+            assertEquals(' ', reader.read());
+            assertArrayEquals(new int[]{4, 2}, matcher.matchAll(reader));
+            assertEquals(2, matcher.matchLongest(reader, true));
+            reader.skip(1);
+            assertEquals(2, matcher.matchLongest(reader, true));
+            assertEquals('f', reader.read());
+            reader.skip(1);
+            assertArrayEquals(new int[]{}, matcher.matchAll(reader));
+            reader.skip(1);
+            assertEquals(-1, matcher.matchLongest(reader, true));
+            assertEquals(-1, reader.read());
+        }
+        try {
+            new LiteralMatcher("a", "");
+            fail();
+        } catch(IllegalArgumentException ex) {
+            assertEquals("Literal cannot be empty.", ex.getMessage());
+        }
+    }
+    
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class MemoTableTest {
+    
+    public MemoTableTest() {
+    }
+
+    /**
+     * Test of get, put and evictBefore methods, of class MemoTable.
+     */
+    @Test
+    public void testPutGet() throws Exception {
+        System.out.println("putGet");
+        MemoTable table = new MemoTable(3);
+        assertEquals(4, table.capacity());
+        try(BranchReader reader = BranchReader.create(new StringReader("abcdef"))) {
+            BranchReader.Memo[] memos = new BranchReader.Memo[5];
+            for(int i = 0; i < memos.length; i++) {
+                memos[i] = reader.memoize(7, i, "r" + i);
+                reader.skip(1);
+            }
+            for(int i = 0; i < 4; i++) {
+                assertTrue(table.put(memos[i]));
+            }
+            assertFalse(table.put(memos[4]));
+            assertEquals(4, table.size());
+            assertSame(memos[2], table.get(2, 7));
+            assertNull(table.get(2, 8));
+            assertNull(table.get(4, 7));
+            table.evictBefore(2);
+            assertEquals(2, table.size());
+            assertNull(table.get(1, 7));
+            assertSame(memos[3], table.get(3, 7));
+            assertTrue(table.put(memos[4]));
+            assertSame(memos[4], table.get(4, 7));
+            table.clear();
+            assertEquals(0, table.size());
+            assertNull(table.get(4, 7));
+        }
+    }
+    
+    /**
+     * Test of evictHalf method, of class MemoTable.
+     */
+    @Test
+    public void testEvictHalf() throws Exception {
+        System.out.println("evictHalf");
+        MemoTable table = new MemoTable(3);
+        try(BranchReader reader = BranchReader.create(new StringReader("abcdef"))) {
+            reader.skip(4);
+            for(int i = 0; i < 4; i++) {
+                assertTrue(table.put(reader.memoize(7, i, "r" + i)));
+            }
+            table.evictHalf();
+            assertEquals(2, table.size());
+            assertNull(table.get(1, 7));
+            assertNotNull(table.get(2, 7));
+            assertNotNull(table.get(3, 7));
+            table.clear();
+            for(int i = 0; i < 3; i++) {
+                assertTrue(table.put(reader.memoize(i, 1, "r" + i)));
+            }
+            assertTrue(table.put(reader.memoize(7, 2, "r")));
+            table.evictHalf();
+            assertEquals(1, table.size());
+            assertNotNull(table.get(2, 7));
+            table = new MemoTable(7);
+            assertTrue(table.put(reader.memoize(7, 0, "r")));
+            for(int i = 0; i < 7; i++) {
+                assertTrue(table.put(reader.memoize(i, 3, "r" + i)));
+            }
+            table.evictHalf();
+            assertEquals(0, table.size());
+        }
+    }
+    
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class TokenCacheTest {
+    
+    public TokenCacheTest() {
+    }
+
+    /**
+     * Test of intern method, of class TokenCache.
+     */
+    @Test
+    public void testIntern() {
+        System.out.println("intern");
+        TokenCache cache = new TokenCache(10);
+        assertEquals(16, cache.capacity());
+        assertEquals(4, new TokenCache(0).capacity());
+        char[] buf = "xwhile whilex".toCharArray();
+        String s1 = cache.intern(buf, 1, 5);
+        assertEquals("while", s1);
+        assertSame(s1, cache.intern(buf, 7, 5));
+        assertSame(s1, cache.intern(new String("while")));
+        assertEquals("", cache.intern(buf, 0, 0));
+        /*
+         * all the strings fall into the only set, the referenced one gets 
+         * the second chance
+         */
+        TokenCache small = new TokenCache(4);
+        String a = small.intern("a");
+        small.intern(new String("a"));
+        String b0 = small.intern("b0");
+        small.intern("b1");
+        small.intern("b2");
+        small.intern("c");
+        assertSame(a, small.intern(new String("a")));
+        assertNotSame(b0, small.intern(new String("b0")));
+    }
+    
+}
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class UTF7CharsetTest {
+    
+    public UTF7CharsetTest() {
+    }
+    
+    private static byte[] readAll(final InputStream is) throws Exception {
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        byte[] buffer = new byte[0x1000];
+        int n;
+        while((n = is.read(buffer)) >= 0) {
+            res.write(buffer, 0, n);
+        }
+        return res.toByteArray();
+    }
+
+    /**
+     * Test of forName method, of class Charset.
+     */
+    @Test
+    public void testForName() throws Exception {
+        System.out.println("forName");
+        assertSame(UTF7Charset.INSTANCE, Charset.forName("UTF-7"));
+        assertSame(UTF7Charset.INSTANCE, Charset.forName("utf7"));
+        assertTrue(Charset.isSupported("UNICODE-1-1-UTF-7"));
+    }
+
+    /**
+     * Test of newDecoder method, of class UTF7Charset.
+     */
+    @Test
+    public void testNewDecoder() throws Exception {
+        System.out.println("newDecoder");
+        byte[] data;
+        try(InputStream is = getClass().getClassLoader().getResourceAsStream("2-utf-7.txt")) {
+            data = readAll(is);
+        }
+        String expected;
+        try(Reader reader = new InputStreamReader(new UTF7InputStream(getClass().getClassLoader().getResourceAsStream("2-utf-7.txt")), "UTF-16BE")) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[0x1000];
+            int n;
+            while((n = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, n);
+            }
+            expected = sb.toString();
+        }
+        assertEquals(expected, UTF7Charset.INSTANCE.newDecoder().decode(ByteBuffer.wrap(data)).toString());
+        /*
+         * a byte at a time into a small buffer
+         */
+        CharsetDecoder decoder = UTF7Charset.INSTANCE.newDecoder();
+        StringBuilder sb = new StringBuilder();
+        CharBuffer out = CharBuffer.allocate(3);
+        ByteBuffer in = ByteBuffer.allocate(data.length);
+        for(int i = 0; i <= data.length; i++) {
+            if(i < data.length) {
+                in.put(data[i]);
+            }
+            in.flip();
+            while(decoder.decode(in, out, i == data.length).isOverflow()) {
+                out.flip();
+                sb.append(out);
+                out.clear();
+            }
+            in.compact();
+        }
+        while(decoder.flush(out).isOverflow()) {
+            out.flip();
+            sb.append(out);
+            out.clear();
+        }
+        out.flip();
+        sb.append(out);
+        assertEquals(expected, sb.toString());
+        
+        assertEquals("a+bABCc!\uFEFF", decodeString("+/v8-a+-b+AEEAQgBD-c+!+/v8-"));
+        assertEquals("\uD83D\uDE00", decodeString("+2D3eAA-"));
+        try {
+            decodeString("+/v8/-");
+            fail();
+        } catch(MalformedInputException ex) {
+        }
+        /*
+         * the bits left at the end of input
+         */
+        assertEquals("\u0000", decodeString("+AAA"));
+        try {
+            decodeString("+AAB");
+            fail();
+        } catch(MalformedInputException ex) {
+        }
+        assertEquals("a\uFFFD", UTF7Charset.INSTANCE.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .decode(ByteBuffer.wrap(new byte[]{'a', '+', 'A', 'A', 'B'})).toString());
+        try {
+            UTF7Charset.INSTANCE.newDecoder().decode(ByteBuffer.wrap(new byte[]{'a', (byte)0x80}));
+            fail();
+        } catch(MalformedInputException ex) {
+        }
+        assertEquals("a\uFFFDb", UTF7Charset.INSTANCE.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .decode(ByteBuffer.wrap(new byte[]{'a', (byte)0x80, 'b'})).toString());
+    }
+    
+    private static String decodeString(final String s) throws CharacterCodingException {
+        return UTF7Charset.INSTANCE.newDecoder().decode(ByteBuffer.wrap(s.getBytes(Charset.forName("US-ASCII")))).toString();
+    }
+    
+    /**
+     * Test of newEncoder method, of class UTF7Charset.
+     */
+    @Test
+    public void testNewEncoder() throws Exception {
+        System.out.println("newEncoder");
+        assertTrue(UTF7Charset.INSTANCE.canEncode());
+        assertEquals("Hi Mom -+Jjo--!", encodeString("Hi Mom -\u263A-!"));
+        assertEquals("A+ImIDkQ.", encodeString("A\u2262\u0391."));
+        assertEquals("+ZeVnLIqe-", encodeString("\u65E5\u672C\u8A9E"));
+        assertEquals("1+-1+AH4-", encodeString("1+1~"));
+        assertEquals("+2D3eAA-", encodeString("\uD83D\uDE00"));
+        try {
+            UTF7Charset.INSTANCE.newEncoder().encode(CharBuffer.wrap("a\uDE00"));
+            fail();
+        } catch(MalformedInputException ex) {
+        }
+        try {
+            UTF7Charset.INSTANCE.newEncoder().encode(CharBuffer.wrap("a\uD83D"));
+            fail();
+        } catch(MalformedInputException ex) {
+        }
+        /*
+         * the replacement of a malformed char is written out of base64 chunk
+         */
+        CharsetEncoder replacing = UTF7Charset.INSTANCE.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE);
+        ByteBuffer bb = replacing.encode(CharBuffer.wrap("\u0416\uD800\u0416x"));
+        assertEquals("+BBY-?+BBY-x", new String(bb.array(), 0, bb.limit(), Charset.forName("US-ASCII")));
+        assertEquals("\u0416?\u0416x", UTF7Charset.INSTANCE.newDecoder().decode(bb).toString());
+        bb = replacing.reset().encode(CharBuffer.wrap("\u0416\uDE00\u0416\uD83D"));
+        assertEquals("\u0416?\u0416?", UTF7Charset.INSTANCE.newDecoder().decode(bb).toString());
+        String text;
+        try(Reader reader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream("2-utf-8.txt"), "UTF-8")) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[0x1000];
+            int n;
+            while((n = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, n);
+            }
+            text = sb.substring(1); // skip BOM
+        }
+        assertEquals(text, new String(text.getBytes(UTF7Charset.INSTANCE), UTF7Charset.INSTANCE));
+        /*
+         * a char at a time into a small buffer
+         */
+        CharsetEncoder encoder = UTF7Charset.INSTANCE.newEncoder();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ByteBuffer out = ByteBuffer.allocate(7);
+        CharBuffer in = CharBuffer.allocate(text.length());
+        for(int i = 0; i <= text.length(); i++) {
+            if(i < text.length()) {
+                in.put(text.charAt(i));
+            }
+            in.flip();
+            while(encoder.encode(in, out, i == text.length()).isOverflow()) {
+                result.write(out.array(), 0, out.position());
+                out.clear();
+            }
+            in.compact();
+        }
+        while(encoder.flush(out).isOverflow()) {
+            result.write(out.array(), 0, out.position());
+            out.clear();
+        }
+        result.write(out.array(), 0, out.position());
+        assertEquals(text, new String(result.toByteArray(), UTF7Charset.INSTANCE));
+    }
+    
+    private static String encodeString(final String s) throws CharacterCodingException {
+        ByteBuffer bb = UTF7Charset.INSTANCE.newEncoder().encode(CharBuffer.wrap(s));
+        return new String(bb.array(), 0, bb.limit(), Charset.forName("US-ASCII"));
+    }
+    
+}
@@ -24,6 +24,7 @@
 package net.leksi.io;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -111,4 +112,60 @@ public class UTF7InputStreamTest {
         assertEquals(expectedText.toString(), resultText.toString());
     }
     
+    /**
+     * Test of read method with array, of class UTF7InputStream.
+     */
+    @Test
+    public void testRead_Array() throws Exception {
+        System.out.println("read_Array");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try(UTF7InputStream utf7is = new UTF7InputStream(getClass().getClassLoader().getResourceAsStream("2-utf-7.txt"))) {
+            int b;
+            while((b = utf7is.read()) >= 0) {
+                expected.write(b);
+            }
+        }
+        for(int size: new int[]{1, 2, 3, 7, 0x1000}) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try(UTF7InputStream utf7is = new UTF7InputStream(getClass().getClassLoader().getResourceAsStream("2-utf-7.txt"))) {
+                byte[] buffer = new byte[size + 1];
+                assertEquals(0, utf7is.read(buffer, 1, 0));
+                int n;
+                while((n = utf7is.read(buffer, 1, size)) >= 0) {
+                    assertTrue(n > 0);
+                    result.write(buffer, 1, n);
+                }
+            }
+            assertArrayEquals("size: " + size, expected.toByteArray(), result.toByteArray());
+        }
+        try(UTF7InputStream utf7is = new UTF7InputStream(new ByteArrayInputStream("a+-b+AEEAQgBD-c".getBytes("US-ASCII")))) {
+            byte[] buffer = new byte[0x100];
+            int n = 0;
+            int k;
+            while((k = utf7is.read(buffer, n, buffer.length - n)) >= 0) {
+                n += k;
+            }
+            assertEquals("a+bABCc", new String(buffer, 0, n, "UTF-16BE"));
+        }
+    }
+    
+    /**
+     * Test of read method on long runs of shift sequences, of class 
+     * UTF7InputStream.
+     */
+    @Test
+    public void testRead_ShiftSequences() throws Exception {
+        System.out.println("read_ShiftSequences");
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 100000; i++) {
+            sb.append("+A-");
+        }
+        sb.append("+!");
+        try(UTF7InputStream utf7is = new UTF7InputStream(new ByteArrayInputStream(sb.toString().getBytes("US-ASCII")))) {
+            assertEquals(0, utf7is.read());
+            assertEquals('!', utf7is.read());
+            assertEquals(-1, utf7is.read());
+        }
+    }
+    
 }
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Alexey Zakharov <leksi@leksi.net>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.leksi.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alexey Zakharov <leksi@leksi.net>
+ */
+public class UTF7OutputStreamTest {
+    
+    public UTF7OutputStreamTest() {
+    }
+    
+    private static String encode(final String text, final boolean encodeOptional) throws Exception {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try(UTF7OutputStream utf7os = new UTF7OutputStream(result, encodeOptional)) {
+            utf7os.write(text.getBytes("UTF-16BE"));
+        }
+        return new String(result.toByteArray(), "US-ASCII");
+    }
+    
+    private static String decode(final byte[] data) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try(Reader reader = new InputStreamReader(new UTF7InputStream(new ByteArrayInputStream(data)), "UTF-16BE")) {
+            char[] buffer = new char[0x1000];
+            int n;
+            while((n = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, n);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Test of write method, of class UTF7OutputStream.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("write");
+        assertEquals("Hi Mom -+Jjo--!", encode("Hi Mom -☺-!", false));
+        assertEquals("Hi Mom -+Jjo--+ACE-", encode("Hi Mom -☺-!", true));
+        assertEquals("A+ImIDkQ.", encode("A≢Α.", false));
+        assertEquals("+ZeVnLIqe-", encode("日本語", false));
+        assertEquals("1+-1+AH4-", encode("1+1~", false));
+        
+        StringBuilder expected = new StringBuilder();
+        try(Reader reader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream("2-utf-8.txt"), "UTF-8")) {
+            char[] buffer = new char[0x1000];
+            int n;
+            while((n = reader.read(buffer)) >= 0) {
+                expected.append(buffer, 0, n);
+            }
+        }
+        String text = expected.substring(1); // skip BOM
+        byte[] data = text.getBytes("UTF-16BE");
+        for(int size: new int[]{1, 3, 0x1000}) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try(UTF7OutputStream utf7os = new UTF7OutputStream(result)) {
+                for(int i = 0; i < data.length; i += size) {
+                    if(size == 1) {
+                        utf7os.write(data[i]);
+                    } else {
+                        utf7os.write(data, i, Math.min(size, data.length - i));
+                    }
+                    if(i % 1000 == 0) {
+                        utf7os.flush();
+                    }
+                }
+            }
+            assertEquals("size: " + size, text, decode(result.toByteArray()));
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        UTF7OutputStream utf7os = new UTF7OutputStream(result);
+        utf7os.write(0);
+        try {
+            utf7os.close();
+            fail();
+        } catch(IOException ex) {
+            assertEquals("Cannot encode incomplete unit.", ex.getMessage());
+        }
+    }
+    
+}